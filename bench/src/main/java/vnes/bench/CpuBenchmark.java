@@ -0,0 +1,58 @@
+/*
+vNES
+Copyright © 2006-2013 Open Emulation Project
+
+This program is free software: you can redistribute it and/or modify it under
+the terms of the GNU General Public License as published by the Free Software
+Foundation, either version 3 of the License, or (at your option) any later
+version.
+
+This program is distributed in the hope that it will be useful, but WITHOUT ANY
+WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS FOR A
+PARTICULAR PURPOSE.  See the GNU General Public License for more details.
+
+You should have received a copy of the GNU General Public License along with
+this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package vnes.bench;
+
+import java.lang.invoke.MethodHandle;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.*;
+
+// CPU.emulate() throughput on the synthetic program, one NTSC frame
+// worth of CPU cycles per operation. With ppu=false the PPU isn't
+// clocked, which leaves the bare instruction loop.
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Thread)
+public class CpuBenchmark {
+
+    static final int FRAME_CYCLES = 29781;
+
+    static final MethodHandle RUN_CYCLES = Vnes.method("NES", "runCycles", int.class);
+
+    @Param({"true", "false"})
+    public boolean ppu;
+
+    Object nes;
+
+    @Setup
+    public void setup() throws Exception {
+
+        nes = Vnes.newNes(SyntheticRom.write(1, 1));
+
+        // The CPU only clocks the PPU in applet mode:
+        Vnes.call(nes, "setAppletMode", Boolean.valueOf(ppu));
+
+    }
+
+    @Benchmark
+    public int emulate() throws Throwable {
+        return (int) RUN_CYCLES.invokeExact(nes, FRAME_CYCLES);
+    }
+}
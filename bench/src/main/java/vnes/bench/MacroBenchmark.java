@@ -0,0 +1,422 @@
+/*
+vNES
+Copyright © 2006-2013 Open Emulation Project
+
+This program is free software: you can redistribute it and/or modify it under
+the terms of the GNU General Public License as published by the Free Software
+Foundation, either version 3 of the License, or (at your option) any later
+version.
+
+This program is distributed in the hope that it will be useful, but WITHOUT ANY
+WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS FOR A
+PARTICULAR PURPOSE.  See the GNU General Public License for more details.
+
+You should have received a copy of the GNU General Public License along with
+this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package vnes.bench;
+
+import java.io.FileInputStream;
+import java.io.FileWriter;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.Writer;
+import java.lang.invoke.MethodHandle;
+import java.lang.management.ManagementFactory;
+import java.util.Arrays;
+import java.util.Properties;
+
+// End-to-end benchmark: runs a fixed set of synthetic workloads
+// headless, with sound emulation on, and compares the frame rates
+// with a stored baseline.
+//
+// Usage (from the repository root, after building bench/):
+//     java -cp bench/target/benchmarks.jar vnes.bench.MacroBenchmark
+//         [-frames n] [-baseline file] [-threshold percent] [-update]
+//         [-recompile] [-verify] [-random n]
+//
+// Exits with status 1 if any workload is slower than its baseline by
+// more than the threshold. -update writes the results as the new
+// baseline instead. Baselines are only comparable on the machine
+// (and JVM) they were measured on. -recompile runs the CPU with hot
+// code compiled to bytecode (see Recompiler). It first runs each
+// workload with and without that, and exits with status 1 if the
+// frames, RAM or sound samples differ. -verify does the same with
+// idle loop skipping and then fusing turned off, which must not
+// change them either. Both also compare RANDOM_FRAMES frames of n
+// (by default 100) random programs (see SyntheticRom.randomProgram).
+//
+// For each workload it reports frames/sec, ns per frame, an estimate
+// of how that splits between the CPU, PPU and APU, and bytes
+// allocated per frame. Each figure is the best of RUNS runs on a
+// fresh NES. The split is only an estimate, found by difference: APU
+// time is what turning off sound emulation saves, and CPU time is how
+// long the same number of CPU cycles takes with neither the PPU nor
+// the APU clocked. The rest is PPU. The runs are noisy, so a part
+// that comes out at zero or less is shown as "-" rather than a figure.
+public class MacroBenchmark {
+
+    static final int RUNS = 5;
+    static final int FRAME_CYCLES = 29781;
+
+    // What to emulate in a timed run:
+    static final int ALL = 0;
+    static final int NO_APU = 1;
+    static final int CPU_ONLY = 2;
+
+    // Whether to turn on the CPU's recompiler:
+    static boolean recompile;
+
+    // CPU settings that must not change what is emulated, as the
+    // setter and the value -verify runs against the default:
+    static final String[] VERIFY_SETTERS = {"setIdleLoopSkipping", "setFusing"};
+    static final boolean[] VERIFY_VALUES = {false, false};
+    static final int RANDOM_FRAMES = 60;
+
+    // A synthetic program and the PPU/APU setup it expects.
+    abstract static class Workload {
+
+        final String name;
+
+        Workload(String name) {
+            this.name = name;
+        }
+
+        // Creates a NES with the workload loaded, ready to run.
+        abstract Object create() throws IOException;
+    }
+
+    static final Workload[] WORKLOADS = {
+        new Workload("cpu-loop") {
+
+            Object create() throws IOException {
+                return start(SyntheticRom.write(0, 1, 1, SyntheticRom.CPU_LOOP, null, null));
+            }
+        },
+        new Workload("sprites") {
+
+            Object create() throws IOException {
+                Object nes = start(SyntheticRom.write(0, 1, 1, SyntheticRom.SPRITES, SyntheticRom.SPRITES_NMI, null));
+                SyntheticRom.setupScreen(nes);
+                SyntheticRom.setupSprites(nes);
+                Vnes.write(nes, 0x2000, 0xA8);
+                return nes;
+            }
+        },
+        new Workload("scroll-splits") {
+
+            Object create() throws IOException {
+                Object nes = start(SyntheticRom.write(0, 1, 1, SyntheticRom.SCROLL_SPLITS, SyntheticRom.SCROLL_SPLITS_NMI, null));
+                SyntheticRom.setupScreen(nes);
+                Vnes.write(nes, 0x2000, 0x88);
+                return nes;
+            }
+        },
+        new Workload("mmc3-irq") {
+
+            Object create() throws IOException {
+                Object nes = start(SyntheticRom.write(4, 8, 16, SyntheticRom.MMC3_IRQ, null, SyntheticRom.MMC3_IRQ_IRQ));
+                SyntheticRom.setupScreen(nes);
+                return nes;
+            }
+        },
+        new Workload("dmc-loop") {
+
+            Object create() throws IOException {
+                return start(SyntheticRom.write(0, 1, 1, SyntheticRom.DMC_LOOP, null, null));
+            }
+        }
+    };
+
+    // Loads the ROM with sound emulation on. No sound line is opened;
+    // the CPU just clocks the pAPU as it would with sound enabled.
+    static Object start(String romFile) {
+
+        Object nes = Vnes.newNes(romFile);
+        Vnes.set(nes, "enableSound", Boolean.TRUE);
+        SyntheticRom.setupSound(nes);
+        return nes;
+
+    }
+
+    // A workload running a random program, on mapper 0 or, for odd
+    // seeds, MMC3.
+    static Workload randomWorkload(final int seed) {
+
+        return new Workload("random-" + seed) {
+
+            Object create() throws IOException {
+                int mapper = seed % 2 == 0 ? 0 : 4;
+                return start(SyntheticRom.write(mapper, mapper == 0 ? 2 : 4, 1, SyntheticRom.randomProgram(seed), null, null));
+            }
+        };
+
+    }
+
+    // Results for one workload.
+    static class Result {
+
+        double fps;
+        double nsPerFrame;
+        double cpuNs;
+        double ppuNs;
+        double apuNs;
+        double bytesPerFrame;
+    }
+
+    public static void main(String[] args) throws Exception {
+
+        int frames = 1000;
+        String baselineFile = "bench/baseline.properties";
+        double threshold = 10;
+        boolean update = false;
+        boolean verify = false;
+        int randomPrograms = 100;
+
+        for (int i = 0; i < args.length; i++) {
+            if (args[i].equals("-frames") && i + 1 < args.length) {
+                frames = Integer.parseInt(args[++i]);
+            } else if (args[i].equals("-baseline") && i + 1 < args.length) {
+                baselineFile = args[++i];
+            } else if (args[i].equals("-threshold") && i + 1 < args.length) {
+                threshold = Double.parseDouble(args[++i]);
+            } else if (args[i].equals("-update")) {
+                update = true;
+            } else if (args[i].equals("-recompile")) {
+                recompile = true;
+            } else if (args[i].equals("-verify")) {
+                verify = true;
+            } else if (args[i].equals("-random") && i + 1 < args.length) {
+                randomPrograms = Integer.parseInt(args[++i]);
+            } else {
+                System.out.println("Usage: MacroBenchmark [-frames n] [-baseline file] [-threshold percent] [-update] [-recompile] [-verify] [-random n]");
+                System.exit(2);
+            }
+        }
+
+        int mismatches = 0;
+        for (int w = 0; (recompile || verify) && w < WORKLOADS.length + randomPrograms; w++) {
+            Workload wl = w < WORKLOADS.length ? WORKLOADS[w] : randomWorkload(w - WORKLOADS.length);
+            int n = w < WORKLOADS.length ? frames : RANDOM_FRAMES;
+            if (recompile) {
+                String diff = compareOutput(wl, n, "setRecompiling", true);
+                if (diff != null) {
+                    System.out.println(wl.name + ": -recompile changes the " + diff);
+                    mismatches++;
+                }
+            }
+            for (int v = 0; verify && v < VERIFY_SETTERS.length; v++) {
+                String diff = compareOutput(wl, n, VERIFY_SETTERS[v], VERIFY_VALUES[v]);
+                if (diff != null) {
+                    System.out.println(wl.name + ": " + VERIFY_SETTERS[v] + "(" + VERIFY_VALUES[v] + ") changes the " + diff);
+                    mismatches++;
+                }
+            }
+        }
+        if (mismatches > 0) {
+            System.exit(1);
+        }
+
+        Properties baseline = new Properties();
+        if (!update) {
+            try {
+                InputStream in = new FileInputStream(baselineFile);
+                try {
+                    baseline.load(in);
+                } finally {
+                    in.close();
+                }
+            } catch (IOException e) {
+                System.out.println("No baseline (" + e.getMessage() + "), only reporting.");
+            }
+        }
+
+        System.out.println(String.format("%-14s %9s %10s %10s %10s %10s %11s %9s %8s",
+                "Workload", "Frames/s", "ns/frame", "~CPU ns", "~PPU ns", "~APU ns", "Bytes/frame", "Baseline", "Change"));
+
+        StringBuffer results = new StringBuffer();
+        int regressions = 0;
+        for (int w = 0; w < WORKLOADS.length; w++) {
+
+            Workload wl = WORKLOADS[w];
+            Result r = measure(wl, frames);
+
+            String change = "";
+            String base = baseline.getProperty(wl.name + ".fps");
+            if (base != null) {
+                double baseFps = Double.parseDouble(base);
+                double pct = (r.fps - baseFps) * 100 / baseFps;
+                change = String.format("%+.1f%%", pct);
+                if (pct < -threshold) {
+                    change += " FAIL";
+                    regressions++;
+                }
+            }
+
+            System.out.println(String.format("%-14s %9.1f %10.0f %10s %10s %10s %11.0f %9s %8s",
+                    wl.name, r.fps, r.nsPerFrame, estimate(r.cpuNs), estimate(r.ppuNs), estimate(r.apuNs),
+                    r.bytesPerFrame, base != null ? base : "-", change));
+
+            results.append(String.format("%s.fps=%.1f%n", wl.name, r.fps));
+            results.append(String.format("%s.bytesPerFrame=%.0f%n", wl.name, r.bytesPerFrame));
+
+        }
+
+        if (update) {
+            Writer out = new FileWriter(baselineFile);
+            try {
+                out.write("# MacroBenchmark baseline: " + frames + " frames, "
+                        + System.getProperty("java.vm.name") + " " + System.getProperty("java.version")
+                        + ", " + Runtime.getRuntime().availableProcessors() + " cores\n");
+                out.write(results.toString());
+            } finally {
+                out.close();
+            }
+            System.out.println("Wrote " + baselineFile);
+        } else if (regressions > 0) {
+            System.out.println(regressions + " workload(s) regressed by more than " + threshold + "%.");
+            System.exit(1);
+        }
+
+    }
+
+    // Runs a workload for the given frames with the default CPU
+    // settings and with the given CPU setter called. Returns what came
+    // out differently (frames, RAM or sound), or null if nothing did.
+    static String compareOutput(Workload wl, int frames, String setter, boolean value) throws IOException {
+
+        long[] expected = outputHashes(wl, frames, null, false);
+        long[] actual = outputHashes(wl, frames, setter, value);
+        String[] names = {"frames", "RAM", "sound"};
+        String diff = null;
+        for (int i = 0; i < names.length; i++) {
+            if (expected[i] != actual[i]) {
+                diff = diff == null ? names[i] : diff + ", " + names[i];
+            }
+        }
+        return diff;
+
+    }
+
+    // Hashes of the frames, the RAM and the sound samples made in
+    // each frame, over a run. The CPU setter is called first if given.
+    static long[] outputHashes(Workload wl, int frames, String setter, boolean value) throws IOException {
+
+        Object nes = wl.create();
+        if (setter != null) {
+            Vnes.call(Vnes.get(nes, "cpu"), setter, Boolean.valueOf(value));
+        }
+        Object gui = Vnes.get(nes, "gui");
+        Object papu = Vnes.get(nes, "papu");
+        short[] mem = (short[]) Vnes.get(Vnes.get(nes, "cpuMem"), "mem");
+
+        long[] hashes = new long[3];
+        for (int f = 0; f < frames; f++) {
+            Vnes.call(nes, "runFrame");
+            byte[] samples = (byte[]) Vnes.get(papu, "sampleBuffer");
+            int count = ((Integer) Vnes.get(papu, "bufferIndex")).intValue();
+            hashes[0] = hashes[0] * 31 + Arrays.hashCode((int[]) Vnes.call(gui, "getFrameBuffer"));
+            hashes[1] = hashes[1] * 31 + Arrays.hashCode(Arrays.copyOf(mem, 0x800));
+            hashes[2] = hashes[2] * 31 + Arrays.hashCode(Arrays.copyOf(samples, count));
+            // No sound line takes the samples, so the buffer is
+            // emptied here:
+            Vnes.set(papu, "bufferIndex", Integer.valueOf(0));
+        }
+        return hashes;
+
+    }
+
+    // Runs a workload in each mode, after a warm-up run.
+    static Result measure(Workload wl, int frames) throws Exception {
+
+        Result r = new Result();
+        long[] bytes = new long[1];
+
+        time(wl, frames, ALL, null);
+
+        r.nsPerFrame = (double) time(wl, frames, ALL, bytes) / frames;
+        r.fps = 1e9 / r.nsPerFrame;
+        r.bytesPerFrame = (double) bytes[0] / frames;
+
+        double noApu = (double) time(wl, frames, NO_APU, null) / frames;
+        r.cpuNs = (double) time(wl, frames, CPU_ONLY, null) / frames;
+        r.apuNs = r.nsPerFrame - noApu;
+        r.ppuNs = noApu - r.cpuNs;
+
+        return r;
+
+    }
+
+    // Formats a part of the split, or "-" if the difference it was
+    // found by isn't above zero.
+    static String estimate(double ns) {
+        return ns > 0 ? String.format("%.0f", ns) : "-";
+    }
+
+    static final MethodHandle RUN_FRAME = Vnes.method("NES", "runFrame");
+    static final MethodHandle RUN_CYCLES = Vnes.method("NES", "runCycles", int.class);
+
+    // Returns the best time in ns of RUNS runs, and the fewest
+    // bytes allocated in a run in bytes[0] if given.
+    static long time(Workload wl, int frames, int mode, long[] bytes) throws Exception {
+
+        long best = Long.MAX_VALUE;
+        long bestBytes = Long.MAX_VALUE;
+        for (int i = 0; i < RUNS; i++) {
+
+            Object nes = wl.create();
+            if (recompile) {
+                Vnes.call(Vnes.get(nes, "cpu"), "setRecompiling", Boolean.TRUE);
+            }
+            if (mode != ALL) {
+                Vnes.set(nes, "enableSound", Boolean.FALSE);
+            }
+            // The CPU only clocks the PPU in applet mode:
+            Vnes.call(nes, "setAppletMode", Boolean.valueOf(mode != CPU_ONLY));
+
+            long b1 = allocatedBytes();
+            long t1 = System.nanoTime();
+            try {
+                if (mode == CPU_ONLY) {
+                    for (int f = 0; f < frames; f++) {
+                        int c = (int) RUN_CYCLES.invokeExact(nes, FRAME_CYCLES);
+                    }
+                } else {
+                    for (int f = 0; f < frames; f++) {
+                        if (!(boolean) RUN_FRAME.invokeExact(nes)) {
+                            throw new IllegalStateException(wl.name + ": CPU crashed");
+                        }
+                    }
+                }
+            } catch (Exception e) {
+                throw e;
+            } catch (Throwable t) {
+                throw new IllegalStateException(t);
+            }
+            long t2 = System.nanoTime();
+            long b2 = allocatedBytes();
+
+            best = Math.min(best, t2 - t1);
+            bestBytes = Math.min(bestBytes, b2 - b1);
+
+        }
+
+        if (bytes != null) {
+            bytes[0] = bestBytes;
+        }
+        return best;
+
+    }
+
+    // Bytes allocated by the current thread so far.
+    static long allocatedBytes() {
+
+        java.lang.management.ThreadMXBean bean = ManagementFactory.getThreadMXBean();
+        if (bean instanceof com.sun.management.ThreadMXBean) {
+            return ((com.sun.management.ThreadMXBean) bean).getThreadAllocatedBytes(Thread.currentThread().getId());
+        }
+        return 0;
+
+    }
+}
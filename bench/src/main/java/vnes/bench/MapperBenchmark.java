@@ -0,0 +1,67 @@
+/*
+vNES
+Copyright © 2006-2013 Open Emulation Project
+
+This program is free software: you can redistribute it and/or modify it under
+the terms of the GNU General Public License as published by the Free Software
+Foundation, either version 3 of the License, or (at your option) any later
+version.
+
+This program is distributed in the hope that it will be useful, but WITHOUT ANY
+WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS FOR A
+PARTICULAR PURPOSE.  See the GNU General Public License for more details.
+
+You should have received a copy of the GNU General Public License along with
+this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package vnes.bench;
+
+import java.lang.invoke.MethodHandle;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.*;
+
+// PRG and CHR bank switching in MapperDefault, cycling through the
+// banks of a 128kB PRG / 64kB CHR image.
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Thread)
+public class MapperBenchmark {
+
+    static final int PRG_BANKS = 8;
+    static final int CHR_1K_BANKS = 64;
+
+    static final MethodHandle LOAD_ROM_BANK = Vnes.method("MapperDefault", "loadRomBank", int.class, int.class);
+    static final MethodHandle LOAD_1K_VROM_BANK = Vnes.method("MapperDefault", "load1kVromBank", int.class, int.class);
+
+    Object mapper;
+    int bank;
+
+    @Setup
+    public void setup() throws Exception {
+
+        Object nes = Vnes.newNes(SyntheticRom.write(PRG_BANKS, CHR_1K_BANKS / 8));
+        mapper = Vnes.get(nes, "memMapper");
+
+    }
+
+    // Switches the 16kB bank at $8000.
+    @Benchmark
+    public void loadRomBank() throws Throwable {
+        bank = (bank + 1) % PRG_BANKS;
+        LOAD_ROM_BANK.invokeExact(mapper, bank, 0x8000);
+    }
+
+    // Switches all eight 1kB CHR banks, as an MMC3 game does
+    // when it changes its whole sprite and background set.
+    @Benchmark
+    public void load1kVromBank() throws Throwable {
+        bank = (bank + 8) % CHR_1K_BANKS;
+        for (int i = 0; i < 8; i++) {
+            LOAD_1K_VROM_BANK.invokeExact(mapper, bank + i, i << 10);
+        }
+    }
+}
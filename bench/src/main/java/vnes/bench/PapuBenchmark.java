@@ -0,0 +1,75 @@
+/*
+vNES
+Copyright © 2006-2013 Open Emulation Project
+
+This program is free software: you can redistribute it and/or modify it under
+the terms of the GNU General Public License as published by the Free Software
+Foundation, either version 3 of the License, or (at your option) any later
+version.
+
+This program is distributed in the hope that it will be useful, but WITHOUT ANY
+WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS FOR A
+PARTICULAR PURPOSE.  See the GNU General Public License for more details.
+
+You should have received a copy of the GNU General Public License along with
+this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package vnes.bench;
+
+import java.lang.invoke.MethodHandle;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.*;
+
+// pAPU channel clocking and sample mixing, with the square, triangle
+// and noise channels playing. No sound line is opened.
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Thread)
+public class PapuBenchmark {
+
+    static final int FRAME_CYCLES = 29781;
+
+    static final MethodHandle ADVANCE = Vnes.method("PAPU", "advance", int.class);
+    static final MethodHandle SAMPLE = Vnes.method("PAPU", "sample");
+    static final MethodHandle SET_BUFFER_INDEX = Vnes.setter("PAPU", "bufferIndex");
+
+    Object papu;
+
+    @Setup
+    public void setup() throws Exception {
+
+        Object nes = Vnes.newNes(SyntheticRom.write(1, 1));
+        SyntheticRom.setupSound(nes);
+        papu = Vnes.get(nes, "papu");
+
+    }
+
+    // One frame of CPU cycles, in steps of a typical instruction length.
+    @Benchmark
+    public void advanceSteps() throws Throwable {
+
+        for (int c = 0; c < FRAME_CYCLES; c += 3) {
+            ADVANCE.invokeExact(papu, 3);
+        }
+        SET_BUFFER_INDEX.invokeExact(papu, 0);
+
+    }
+
+    // One frame of CPU cycles in a single batch, as the CPU catches
+    // the APU up at the end of a frame.
+    @Benchmark
+    public void advance() throws Throwable {
+        ADVANCE.invokeExact(papu, FRAME_CYCLES);
+        SET_BUFFER_INDEX.invokeExact(papu, 0);
+    }
+
+    @Benchmark
+    public void sample() throws Throwable {
+        SAMPLE.invokeExact(papu);
+        SET_BUFFER_INDEX.invokeExact(papu, 0);
+    }
+}
@@ -0,0 +1,77 @@
+/*
+vNES
+Copyright © 2006-2013 Open Emulation Project
+
+This program is free software: you can redistribute it and/or modify it under
+the terms of the GNU General Public License as published by the Free Software
+Foundation, either version 3 of the License, or (at your option) any later
+version.
+
+This program is distributed in the hope that it will be useful, but WITHOUT ANY
+WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS FOR A
+PARTICULAR PURPOSE.  See the GNU General Public License for more details.
+
+You should have received a copy of the GNU General Public License along with
+this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package vnes.bench;
+
+import java.lang.invoke.MethodHandle;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.*;
+
+// PPU background rendering and scanline composition, one full frame
+// per operation.
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Thread)
+public class PpuBenchmark {
+
+    static final MethodHandle RENDER_BG = Vnes.method("PPU", "renderBgScanline", int.class);
+    static final MethodHandle RENDER_FRAME = Vnes.method("PPU", "renderFramePartially", int[].class, int.class, int.class);
+    static final MethodHandle SET_CNT_FV = Vnes.setter("PPU", "cntFV");
+    static final MethodHandle SET_CNT_VT = Vnes.setter("PPU", "cntVT");
+    static final MethodHandle SET_CNT_V = Vnes.setter("PPU", "cntV");
+    static final MethodHandle SET_CNT_H = Vnes.setter("PPU", "cntH");
+    static final MethodHandle SET_VALID_TILE_DATA = Vnes.setter("PPU", "validTileData");
+
+    Object ppu;
+    int[] buffer;
+
+    @Setup
+    public void setup() throws Exception {
+
+        Object nes = Vnes.newNes(SyntheticRom.write(1, 1));
+        SyntheticRom.setupScreen(nes);
+        ppu = Vnes.get(nes, "ppu");
+        buffer = (int[]) Vnes.get(ppu, "buffer");
+
+    }
+
+    @Benchmark
+    public void renderBgScanline() throws Throwable {
+
+        // Start from the top of the first name table,
+        // as at the start of a frame:
+        SET_CNT_FV.invokeExact(ppu, 0);
+        SET_CNT_VT.invokeExact(ppu, 0);
+        SET_CNT_V.invokeExact(ppu, 0);
+        SET_CNT_H.invokeExact(ppu, 0);
+        SET_VALID_TILE_DATA.invokeExact(ppu, false);
+
+        for (int scan = 0; scan < 240; scan++) {
+            RENDER_BG.invokeExact(ppu, scan);
+        }
+
+    }
+
+    // Composes the background and sprites of every scanline.
+    @Benchmark
+    public void renderFramePartially() throws Throwable {
+        RENDER_FRAME.invokeExact(ppu, buffer, 0, 240);
+    }
+}
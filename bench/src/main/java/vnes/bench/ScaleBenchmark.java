@@ -0,0 +1,64 @@
+/*
+vNES
+Copyright © 2006-2013 Open Emulation Project
+
+This program is free software: you can redistribute it and/or modify it under
+the terms of the GNU General Public License as published by the Free Software
+Foundation, either version 3 of the License, or (at your option) any later
+version.
+
+This program is distributed in the hope that it will be useful, but WITHOUT ANY
+WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS FOR A
+PARTICULAR PURPOSE.  See the GNU General Public License for more details.
+
+You should have received a copy of the GNU General Public License along with
+this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package vnes.bench;
+
+import java.lang.invoke.MethodHandle;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.*;
+
+// 2x screen scalers, one full frame per operation.
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Thread)
+public class ScaleBenchmark {
+
+    static final MethodHandle NORMAL = Vnes.method("Scale", "doNormalScaling", int[].class, int[].class, boolean[].class);
+    static final MethodHandle SCANLINE = Vnes.method("Scale", "doScanlineScaling", int[].class, int[].class, boolean[].class);
+
+    int[] src;
+    int[] dest;
+    boolean[] changed;
+
+    @Setup
+    public void setup() {
+
+        Random rnd = new Random(1);
+        src = new int[256 * 240];
+        for (int i = 0; i < src.length; i++) {
+            src[i] = rnd.nextInt() & 0xFFFFFF;
+        }
+        dest = new int[512 * 480];
+        changed = new boolean[240];
+        java.util.Arrays.fill(changed, true);
+
+    }
+
+    @Benchmark
+    public void doNormalScaling() throws Throwable {
+        NORMAL.invokeExact(src, dest, changed);
+    }
+
+    @Benchmark
+    public void doScanlineScaling() throws Throwable {
+        SCANLINE.invokeExact(src, dest, changed);
+    }
+}
@@ -0,0 +1,433 @@
+/*
+vNES
+Copyright © 2006-2013 Open Emulation Project
+
+This program is free software: you can redistribute it and/or modify it under
+the terms of the GNU General Public License as published by the Free Software
+Foundation, either version 3 of the License, or (at your option) any later
+version.
+
+This program is distributed in the hope that it will be useful, but WITHOUT ANY
+WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS FOR A
+PARTICULAR PURPOSE.  See the GNU General Public License for more details.
+
+You should have received a copy of the GNU General Public License along with
+this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package vnes.bench;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.lang.invoke.MethodHandle;
+import java.util.Random;
+
+// Builds iNES images for the benchmarks, so that no game ROMs
+// are needed. Every 16kB PRG bank holds the same code in its upper
+// 8kB, which is where the CPU sees it at $E000 with both the default
+// and the MMC3 bank layout. CHR data is random, so tiles are partly
+// transparent.
+final class SyntheticRom {
+
+    // Where the main program, the NMI handler and the IRQ handler go:
+    static final int MAIN_ADDRESS = 0xE000;
+    static final int NMI_ADDRESS = 0xE100;
+    static final int IRQ_ADDRESS = 0xE200;
+
+    // Turns off rendering and NMI, then loops over a mix of
+    // loads, stores, ALU ops and branches.
+    static final int[] CPU_LOOP = {
+        0x78,               // $E000 SEI
+        0xD8,               // $E001 CLD
+        0xA2, 0xFF,         // $E002 LDX #$FF
+        0x9A,               // $E004 TXS
+        0xA9, 0x00,         // $E005 LDA #$00
+        0x8D, 0x00, 0x20,   // $E007 STA $2000
+        0x8D, 0x01, 0x20,   // $E00A STA $2001
+        0xE8,               // $E00D INX
+        0xBD, 0x00, 0x02,   // $E00E LDA $0200,X
+        0x69, 0x13,         // $E011 ADC #$13
+        0x9D, 0x00, 0x03,   // $E013 STA $0300,X
+        0x2A,               // $E016 ROL A
+        0x45, 0x10,         // $E017 EOR $10
+        0x85, 0x10,         // $E019 STA $10
+        0x88,               // $E01B DEY
+        0xD0, 0xEF,         // $E01C BNE $E00D
+        0xE6, 0x11,         // $E01E INC $11
+        0x4C, 0x0D, 0xE0    // $E020 JMP $E00D
+    };
+
+    // Idles; the NMI handler moves all sprites one pixel right
+    // and copies them from $0200 to sprite RAM by DMA.
+    static final int[] SPRITES = {
+        0x78,               // $E000 SEI
+        0xD8,               // $E001 CLD
+        0xA2, 0xFF,         // $E002 LDX #$FF
+        0x9A,               // $E004 TXS
+        0x4C, 0x05, 0xE0    // $E005 JMP $E005
+    };
+    static final int[] SPRITES_NMI = {
+        0xA2, 0x00,         // $E100 LDX #$00
+        0xFE, 0x03, 0x02,   // $E102 INC $0203,X
+        0xE8,               // $E105 INX
+        0xE8,               // $E106 INX
+        0xE8,               // $E107 INX
+        0xE8,               // $E108 INX
+        0xD0, 0xF7,         // $E109 BNE $E102
+        0xA9, 0x00,         // $E10B LDA #$00
+        0x8D, 0x03, 0x20,   // $E10D STA $2003
+        0xA9, 0x02,         // $E110 LDA #$02
+        0x8D, 0x14, 0x40,   // $E112 STA $4014
+        0x40                // $E115 RTI
+    };
+
+    // Waits for the sprite 0 hit, then changes the horizontal
+    // scroll every 8 scanlines or so, 24 times per frame. The NMI
+    // handler resets the scroll.
+    static final int[] SCROLL_SPLITS = {
+        0x78,               // $E000 SEI
+        0xD8,               // $E001 CLD
+        0xA2, 0xFF,         // $E002 LDX #$FF
+        0x9A,               // $E004 TXS
+        0x2C, 0x02, 0x20,   // $E005 BIT $2002
+        0x50, 0xFB,         // $E008 BVC $E005
+        0xA0, 0x18,         // $E00A LDY #24
+        0xA2, 0xB4,         // $E00C LDX #180
+        0xCA,               // $E00E DEX
+        0xD0, 0xFD,         // $E00F BNE $E00E
+        0xE6, 0x10,         // $E011 INC $10
+        0xA5, 0x10,         // $E013 LDA $10
+        0x8D, 0x05, 0x20,   // $E015 STA $2005
+        0x8D, 0x05, 0x20,   // $E018 STA $2005
+        0x88,               // $E01B DEY
+        0xD0, 0xEE,         // $E01C BNE $E00C
+        0x2C, 0x02, 0x20,   // $E01E BIT $2002
+        0x70, 0xFB,         // $E021 BVS $E01E
+        0x4C, 0x05, 0xE0    // $E023 JMP $E005
+    };
+    static final int[] SCROLL_SPLITS_NMI = {
+        0x48,               // $E100 PHA
+        0xA9, 0x00,         // $E101 LDA #$00
+        0x8D, 0x05, 0x20,   // $E103 STA $2005
+        0x8D, 0x05, 0x20,   // $E106 STA $2005
+        0x68,               // $E109 PLA
+        0x40                // $E10A RTI
+    };
+
+    // For MMC3: sets up a scanline IRQ every 8 lines and runs a
+    // busy loop. The IRQ handler switches two CHR banks and the
+    // PRG bank at $8000.
+    static final int[] MMC3_IRQ = {
+        0x78,               // $E000 SEI
+        0xD8,               // $E001 CLD
+        0xA2, 0xFF,         // $E002 LDX #$FF
+        0x9A,               // $E004 TXS
+        0xA9, 0x07,         // $E005 LDA #$07
+        0x8D, 0x00, 0xC0,   // $E007 STA $C000
+        0x8D, 0x01, 0xC0,   // $E00A STA $C001
+        0x8D, 0x01, 0xE0,   // $E00D STA $E001
+        0x58,               // $E010 CLI
+        0xE8,               // $E011 INX
+        0xBD, 0x00, 0x02,   // $E012 LDA $0200,X
+        0x69, 0x13,         // $E015 ADC #$13
+        0x9D, 0x00, 0x03,   // $E017 STA $0300,X
+        0x88,               // $E01A DEY
+        0xD0, 0xF4,         // $E01B BNE $E011
+        0x4C, 0x11, 0xE0    // $E01D JMP $E011
+    };
+    static final int[] MMC3_IRQ_IRQ = {
+        0x48,               // $E200 PHA
+        0x8D, 0x00, 0xE0,   // $E201 STA $E000
+        0x8D, 0x01, 0xE0,   // $E204 STA $E001
+        0xE6, 0x12,         // $E207 INC $12
+        0xA9, 0x00,         // $E209 LDA #$00
+        0x8D, 0x00, 0x80,   // $E20B STA $8000
+        0xA5, 0x12,         // $E20E LDA $12
+        0x8D, 0x01, 0x80,   // $E210 STA $8001
+        0xA9, 0x02,         // $E213 LDA #$02
+        0x8D, 0x00, 0x80,   // $E215 STA $8000
+        0xA5, 0x12,         // $E218 LDA $12
+        0x8D, 0x01, 0x80,   // $E21A STA $8001
+        0xA9, 0x06,         // $E21D LDA #$06
+        0x8D, 0x00, 0x80,   // $E21F STA $8000
+        0xA5, 0x12,         // $E222 LDA $12
+        0x8D, 0x01, 0x80,   // $E224 STA $8001
+        0x68,               // $E227 PLA
+        0x40                // $E228 RTI
+    };
+
+    // Plays the last 4kB of the ROM as a looped DMC sample at the
+    // highest rate, under the CPU_LOOP mix of instructions. The
+    // square channel's period changes every outer loop.
+    static final int[] DMC_LOOP = {
+        0x78,               // $E000 SEI
+        0xD8,               // $E001 CLD
+        0xA2, 0xFF,         // $E002 LDX #$FF
+        0x9A,               // $E004 TXS
+        0xA9, 0x4F,         // $E005 LDA #$4F
+        0x8D, 0x10, 0x40,   // $E007 STA $4010
+        0xA9, 0xC0,         // $E00A LDA #$C0
+        0x8D, 0x12, 0x40,   // $E00C STA $4012
+        0xA9, 0xFF,         // $E00F LDA #$FF
+        0x8D, 0x13, 0x40,   // $E011 STA $4013
+        0xA9, 0x1F,         // $E014 LDA #$1F
+        0x8D, 0x15, 0x40,   // $E016 STA $4015
+        0xE8,               // $E019 INX
+        0xBD, 0x00, 0x02,   // $E01A LDA $0200,X
+        0x69, 0x13,         // $E01D ADC #$13
+        0x9D, 0x00, 0x03,   // $E01F STA $0300,X
+        0x88,               // $E022 DEY
+        0xD0, 0xF4,         // $E023 BNE $E019
+        0xE6, 0x10,         // $E025 INC $10
+        0xA5, 0x10,         // $E027 LDA $10
+        0x8D, 0x02, 0x40,   // $E029 STA $4002
+        0x4C, 0x19, 0xE0    // $E02C JMP $E019
+    };
+
+    // Sequences the CPU fuses, for randomProgram() to put in now
+    // and then:
+    private static final int[][] FUSED = {
+        {0xBD, 0x9D},               // LDA abs,X / STA abs,X
+        {0xCA, 0xD0},               // DEX / BNE
+        {0x88, 0xD0},               // DEY / BNE
+        {0xE8, 0xE0, 0xD0},         // INX / CPX #imm / BNE
+        {0xC8, 0xC0, 0xD0},         // INY / CPY #imm / BNE
+        {0xA5, 0x18, 0x69, 0x85},   // LDA zp / CLC / ADC #imm / STA zp
+        {0x0A, 0x0A},               // ASL A x 2
+        {0x0A, 0x0A, 0x0A, 0x0A},   // ASL A x 4
+        {0x4A, 0x4A, 0x4A}          // LSR A x 3
+    };
+
+    private static final MethodHandle OP_DATA = Vnes.method("CpuInfo", "getOpData");
+
+    private SyntheticRom() {
+    }
+
+    // Returns a main program of about 240 bytes of random
+    // instructions that loops back to MAIN_ADDRESS. Operands mostly
+    // point into RAM, and some at the PPU and APU registers and at
+    // ROM (the mapper registers). Branches either fall through or
+    // skip the next instruction. There are no jumps, calls or
+    // returns, so the program always comes round again.
+    static int[] randomProgram(long seed) {
+
+        int[] opdata;
+        try {
+            opdata = (int[]) OP_DATA.invoke();
+        } catch (Throwable t) {
+            throw new IllegalStateException(t);
+        }
+
+        Random r = new Random(seed);
+        int[] p = new int[300];
+        int n = 0;
+        while (n < 240) {
+            if (r.nextInt(3) == 0) {
+                int[] seq = FUSED[r.nextInt(FUSED.length)];
+                for (int i = 0; i < seq.length; i++) {
+                    n = emit(p, n, r, opdata, seq[i]);
+                }
+            } else {
+                int op = randomOp(r, opdata, true);
+                n = emit(p, n, r, opdata, op);
+                if (((opdata[op] >> 8) & 0xFF) == 1) {
+                    // A branch; its offset is left at 0 or set to
+                    // skip the instruction after it:
+                    int next = randomOp(r, opdata, false);
+                    if (r.nextBoolean()) {
+                        p[n - 1] = (opdata[next] >> 16) & 0xFF;
+                    }
+                    n = emit(p, n, r, opdata, next);
+                }
+            }
+        }
+
+        // JMP MAIN_ADDRESS:
+        p[n++] = 0x4C;
+        p[n++] = MAIN_ADDRESS & 0xFF;
+        p[n++] = MAIN_ADDRESS >> 8;
+        int[] program = new int[n];
+        System.arraycopy(p, 0, program, 0, n);
+        return program;
+
+    }
+
+    // Picks a random opcode, leaving out BRK, JMP, JSR, RTI, RTS and
+    // unused opcodes, and branches unless asked for.
+    private static int randomOp(Random r, int[] opdata, boolean branches) {
+
+        while (true) {
+            int op = r.nextInt(256);
+            int inst = opdata[op] & 0xFF;
+            int mode = (opdata[op] >> 8) & 0xFF;
+            if (opdata[op] == 0xFF || inst == 10 || inst == 27 || inst == 28 || inst == 41 || inst == 42) {
+                continue;
+            }
+            if (mode == 1 && !branches) {
+                continue;
+            }
+            return op;
+        }
+
+    }
+
+    // Adds an instruction with random operands at p[n], and returns
+    // the index after it. Branch offsets are 0.
+    private static int emit(int[] p, int n, Random r, int[] opdata, int op) {
+
+        p[n++] = op;
+        int size = (opdata[op] >> 16) & 0xFF;
+        if (size == 2) {
+            p[n++] = ((opdata[op] >> 8) & 0xFF) == 1 ? 0 : r.nextInt(256);
+        } else if (size == 3) {
+            int address;
+            int k = r.nextInt(10);
+            if (k < 7) {
+                address = r.nextInt(0x800);
+            } else if (k == 7) {
+                address = 0x8000 + r.nextInt(0x8000);
+            } else if (k == 8) {
+                address = 0x2000 + r.nextInt(8);
+            } else {
+                address = 0x4000 + r.nextInt(0x18);
+            }
+            p[n++] = address & 0xFF;
+            p[n++] = address >> 8;
+        }
+        return n;
+
+    }
+
+    // Writes a mapper 0 image running CPU_LOOP.
+    static String write(int prgBanks, int chrBanks) throws IOException {
+        return write(0, prgBanks, chrBanks, CPU_LOOP, null, null);
+    }
+
+    // Writes an image with the given mapper, number of 16kB PRG and
+    // 8kB CHR banks, main program and interrupt handlers to a
+    // temporary file, and returns its path. A null handler is a
+    // plain RTI.
+    static String write(int mapper, int prgBanks, int chrBanks, int[] main, int[] nmi, int[] irq) throws IOException {
+
+        byte[] img = new byte[16 + prgBanks * 16384 + chrBanks * 8192];
+        img[0] = 'N';
+        img[1] = 'E';
+        img[2] = 'S';
+        img[3] = 0x1A;
+        img[4] = (byte) prgBanks;
+        img[5] = (byte) chrBanks;
+        img[6] = (byte) ((mapper & 0xF) << 4);
+        img[7] = (byte) (mapper & 0xF0);
+
+        for (int b = 0; b < prgBanks; b++) {
+            int bank = 16 + b * 16384;
+            code(img, bank, MAIN_ADDRESS, main);
+            code(img, bank, NMI_ADDRESS, nmi != null ? nmi : new int[]{0x40});
+            code(img, bank, IRQ_ADDRESS, irq != null ? irq : new int[]{0x40});
+            vector(img, bank + 0x3FFA, NMI_ADDRESS);
+            vector(img, bank + 0x3FFC, MAIN_ADDRESS);
+            vector(img, bank + 0x3FFE, IRQ_ADDRESS);
+        }
+
+        Random rnd = new Random(1);
+        for (int i = 16 + prgBanks * 16384; i < img.length; i++) {
+            img[i] = (byte) rnd.nextInt(256);
+        }
+
+        File f = File.createTempFile("vnes-bench", ".nes");
+        f.deleteOnExit();
+        FileOutputStream out = new FileOutputStream(f);
+        try {
+            out.write(img);
+        } finally {
+            out.close();
+        }
+        return f.getAbsolutePath();
+
+    }
+
+    private static void code(byte[] img, int bank, int address, int[] code) {
+        for (int i = 0; i < code.length; i++) {
+            img[bank + (address & 0x3FFF) + i] = (byte) code[i];
+        }
+    }
+
+    private static void vector(byte[] img, int offset, int address) {
+        img[offset] = (byte) address;
+        img[offset + 1] = (byte) (address >> 8);
+    }
+
+    // Fills the name tables, attributes, palette and sprite RAM with
+    // varied data and turns on background and sprite rendering.
+    // Sprites use the second pattern table; every other one is
+    // behind the background, and some are flipped.
+    static void setupScreen(Object nes) {
+
+        Vnes.write(nes, 0x2001, 0x00);
+
+        // Name tables and attributes:
+        Vnes.write(nes, 0x2006, 0x20);
+        Vnes.write(nes, 0x2006, 0x00);
+        for (int i = 0; i < 0x800; i++) {
+            Vnes.write(nes, 0x2007, (i * 7) & 0xFF);
+        }
+
+        // Palettes:
+        Vnes.write(nes, 0x2006, 0x3F);
+        Vnes.write(nes, 0x2006, 0x00);
+        for (int i = 0; i < 32; i++) {
+            Vnes.write(nes, 0x2007, (i * 5 + 1) & 0x3F);
+        }
+
+        // Sprites:
+        Vnes.write(nes, 0x2003, 0x00);
+        for (int i = 0; i < 64; i++) {
+            Vnes.write(nes, 0x2004, (i * 29) % 224);
+            Vnes.write(nes, 0x2004, i * 3);
+            Vnes.write(nes, 0x2004, (i & 3) | ((i & 1) << 5) | ((i & 12) << 4));
+            Vnes.write(nes, 0x2004, (i * 37) % 248);
+        }
+
+        // Scroll to the top left corner:
+        Vnes.write(nes, 0x2005, 0x00);
+        Vnes.write(nes, 0x2005, 0x00);
+
+        Vnes.write(nes, 0x2000, 0x08);
+        Vnes.write(nes, 0x2001, 0x1E);
+
+    }
+
+    // Puts 64 8x16 sprites in $0200-$02FF for SPRITES to copy into
+    // sprite RAM, in bands of 8 overlapping ones so that most
+    // scanlines have the most sprites the PPU can show.
+    static void setupSprites(Object nes) {
+
+        for (int i = 0; i < 64; i++) {
+            Vnes.write(nes, 0x0200 + i * 4, (i % 8) * 28 + (i / 8) * 2);
+            Vnes.write(nes, 0x0201 + i * 4, (i * 6) & 0xFF);
+            Vnes.write(nes, 0x0202 + i * 4, (i & 3) | ((i & 1) << 5) | ((i & 12) << 4));
+            Vnes.write(nes, 0x0203 + i * 4, (i * 29) & 0xFF);
+        }
+
+    }
+
+    // Starts long notes on the square, triangle and noise channels.
+    static void setupSound(Object nes) {
+
+        Vnes.write(nes, 0x4015, 0x0F);
+        Vnes.write(nes, 0x4000, 0xBF);
+        Vnes.write(nes, 0x4002, 0x80);
+        Vnes.write(nes, 0x4003, 0x01);
+        Vnes.write(nes, 0x4004, 0x7F);
+        Vnes.write(nes, 0x4006, 0x40);
+        Vnes.write(nes, 0x4007, 0x02);
+        Vnes.write(nes, 0x4008, 0xFF);
+        Vnes.write(nes, 0x400A, 0x80);
+        Vnes.write(nes, 0x400B, 0x01);
+        Vnes.write(nes, 0x400C, 0x3F);
+        Vnes.write(nes, 0x400E, 0x04);
+        Vnes.write(nes, 0x400F, 0x08);
+
+    }
+}
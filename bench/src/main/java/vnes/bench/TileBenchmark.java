@@ -0,0 +1,78 @@
+/*
+vNES
+Copyright © 2006-2013 Open Emulation Project
+
+This program is free software: you can redistribute it and/or modify it under
+the terms of the GNU General Public License as published by the Free Software
+Foundation, either version 3 of the License, or (at your option) any later
+version.
+
+This program is distributed in the hope that it will be useful, but WITHOUT ANY
+WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS FOR A
+PARTICULAR PURPOSE.  See the GNU General Public License for more details.
+
+You should have received a copy of the GNU General Public License along with
+this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package vnes.bench;
+
+import java.lang.invoke.MethodHandle;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.*;
+
+// Pattern decoding and drawing for a single tile.
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Thread)
+public class TileBenchmark {
+
+    static final MethodHandle DECODE = Vnes.method("Tile", "decode", short[].class, int.class, int[].class, int.class, int.class);
+    static final MethodHandle RENDER_SIMPLE = Vnes.method("Tile", "renderSimple",
+            int[].class, int.class, int.class, int.class, int[].class, int.class, int[].class);
+
+    short[] pattern;
+    int[] rows;
+    int[] buffer;
+    int[] palette;
+    int pos;
+
+    @Setup
+    public void setup() throws Throwable {
+
+        pattern = new short[16];
+        for (int i = 0; i < 16; i++) {
+            pattern[i] = (short) ((i * 0x5B + 0x3C) & 0xFF);
+        }
+        rows = new int[8];
+        DECODE.invokeExact(pattern, 0, rows, 0, 1);
+
+        buffer = new int[256 * 240];
+        palette = new int[16];
+        for (int i = 0; i < 16; i++) {
+            palette[i] = i * 0x111111;
+        }
+
+    }
+
+    // Decodes all 8 rows of a tile.
+    @Benchmark
+    public void decode() throws Throwable {
+        DECODE.invokeExact(pattern, 0, rows, 0, 1);
+    }
+
+    // Draws the tile, moving across the screen.
+    @Benchmark
+    public void renderSimple() throws Throwable {
+        pos += 9;
+        if (pos >= 256 * 30) {
+            pos -= 256 * 30;
+        }
+        int x = pos & 0xF8;
+        int y = (pos >> 8) << 3;
+        RENDER_SIMPLE.invokeExact(rows, 0, x, y, buffer, 4, palette);
+    }
+}
\ No newline at end of file
@@ -0,0 +1,167 @@
+/*
+vNES
+Copyright © 2006-2013 Open Emulation Project
+
+This program is free software: you can redistribute it and/or modify it under
+the terms of the GNU General Public License as published by the Free Software
+Foundation, either version 3 of the License, or (at your option) any later
+version.
+
+This program is distributed in the hope that it will be useful, but WITHOUT ANY
+WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS FOR A
+PARTICULAR PURPOSE.  See the GNU General Public License for more details.
+
+You should have received a copy of the GNU General Public License along with
+this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package vnes.bench;
+
+import java.lang.invoke.MethodHandle;
+import java.lang.invoke.MethodHandles;
+import java.lang.reflect.Field;
+import java.lang.reflect.Method;
+import java.lang.reflect.Modifier;
+
+// Access to the emulator classes from the benchmarks.
+//
+// vNES lives in the unnamed package, which a named package can't import,
+// and JMH won't generate code for benchmarks in the unnamed package. So
+// the benchmarks reach the emulator by reflection during setup, and
+// through method handles in the measured code. The handles are kept in
+// static final fields, where the JIT inlines them like direct calls.
+// Receivers are typed as Object.
+final class Vnes {
+
+    private Vnes() {
+    }
+
+    // Creates a headless NES and loads the given ROM file.
+    static Object newNes(String romFile) {
+
+        try {
+            Object gui = Class.forName("HeadlessUI").getConstructor().newInstance();
+            Object nes = call(gui, "getNES");
+            if (!((Boolean) call(nes, "loadRom", romFile)).booleanValue()) {
+                throw new IllegalStateException("Unable to load " + romFile);
+            }
+            return nes;
+        } catch (ReflectiveOperationException e) {
+            throw new IllegalStateException(e);
+        }
+
+    }
+
+    // Creates an instance with the no-arg constructor.
+    static Object create(String className) {
+
+        try {
+            return Class.forName(className).getConstructor().newInstance();
+        } catch (ReflectiveOperationException e) {
+            throw new IllegalStateException(e);
+        }
+
+    }
+
+    // Reads a field (for setup only).
+    static Object get(Object obj, String name) {
+
+        try {
+            return field(obj.getClass(), name).get(obj);
+        } catch (ReflectiveOperationException e) {
+            throw new IllegalStateException(e);
+        }
+
+    }
+
+    // Writes a field (for setup only).
+    static void set(Object obj, String name, Object value) {
+
+        try {
+            field(obj.getClass(), name).set(obj, value);
+        } catch (ReflectiveOperationException e) {
+            throw new IllegalStateException(e);
+        }
+
+    }
+
+    // Calls a method by name and argument count (for setup only).
+    static Object call(Object obj, String name, Object... args) {
+
+        for (Class<?> c = obj.getClass(); c != null; c = c.getSuperclass()) {
+            for (Method m : c.getDeclaredMethods()) {
+                if (m.getName().equals(name) && m.getParameterCount() == args.length) {
+                    try {
+                        m.setAccessible(true);
+                        return m.invoke(obj, args);
+                    } catch (ReflectiveOperationException e) {
+                        throw new IllegalStateException(e);
+                    }
+                }
+            }
+        }
+        throw new IllegalStateException("No method " + name + " in " + obj.getClass());
+
+    }
+
+    // Writes a CPU address through the memory mapper, as the CPU would.
+    static void write(Object nes, int address, int value) {
+        call(get(nes, "memMapper"), "write", address, (short) value);
+    }
+
+    // Returns a handle for a (possibly private) method. For instance
+    // methods the receiver parameter is typed as Object.
+    static MethodHandle method(String className, String name, Class<?>... params) {
+
+        try {
+            Method m = null;
+            for (Class<?> c = Class.forName(className); m == null && c != null; c = c.getSuperclass()) {
+                try {
+                    m = c.getDeclaredMethod(name, params);
+                } catch (NoSuchMethodException e) {
+                    // Try the superclass.
+                }
+            }
+            if (m == null) {
+                throw new NoSuchMethodException(className + "." + name);
+            }
+            m.setAccessible(true);
+            MethodHandle mh = MethodHandles.lookup().unreflect(m);
+            if (Modifier.isStatic(m.getModifiers())) {
+                return mh;
+            }
+            return mh.asType(mh.type().changeParameterType(0, Object.class));
+        } catch (ReflectiveOperationException e) {
+            throw new ExceptionInInitializerError(e);
+        }
+
+    }
+
+    // Returns a setter handle for a (possibly private) field,
+    // with the receiver typed as Object.
+    static MethodHandle setter(String className, String name) {
+
+        try {
+            MethodHandle mh = MethodHandles.lookup().unreflectSetter(field(Class.forName(className), name));
+            return mh.asType(mh.type().changeParameterType(0, Object.class));
+        } catch (ReflectiveOperationException e) {
+            throw new ExceptionInInitializerError(e);
+        }
+
+    }
+
+    private static Field field(Class<?> cls, String name) throws NoSuchFieldException {
+
+        for (Class<?> c = cls; c != null; c = c.getSuperclass()) {
+            try {
+                Field f = c.getDeclaredField(name);
+                f.setAccessible(true);
+                return f;
+            } catch (NoSuchFieldException e) {
+                // Try the superclass.
+            }
+        }
+        throw new NoSuchFieldException(cls.getName() + "." + name);
+
+    }
+}
@@ -38,7 +38,6 @@ public class AppletUI implements UI {
         vScreen = new ScreenView(nes, 256, 240);
         vScreen.setBgColor(applet.bgColor.getRGB());
         vScreen.init();
-        vScreen.setNotifyImageReady(true);
 
         kbJoy1 = new KbInputHandler(nes, 0);
         kbJoy2 = new KbInputHandler(nes, 1);
@@ -68,9 +67,12 @@ public class AppletUI implements UI {
 
     public void imageReady(boolean skipFrame) {
 
+        // Draw image:
+        vScreen.imageReady(skipFrame);
+
         // Sound stuff:
         int tmp = nes.getPapu().bufferIndex;
-        if (Globals.enableSound && Globals.timeEmulation && tmp > 0) {
+        if (nes.isSoundEnabled() && nes.isTimeEmulation() && tmp > 0) {
 
             int min_avail = nes.getPapu().line.getBufferSize() - 4 * tmp;
 
@@ -87,9 +89,9 @@ public class AppletUI implements UI {
         }
 
         // Sleep a bit if sound is disabled:
-        if (Globals.timeEmulation && !Globals.enableSound) {
+        if (nes.isTimeEmulation() && !nes.isSoundEnabled()) {
 
-            sleepTime = Globals.frameTime;
+            sleepTime = nes.getFrameTime();
             if ((t2 = timer.currentMicros()) - t1 < sleepTime) {
                 timer.sleepMicros(sleepTime - (t2 - t1));
             }
@@ -0,0 +1,282 @@
+/*
+vNES
+Copyright © 2006-2013 Open Emulation Project
+
+This program is free software: you can redistribute it and/or modify it under
+the terms of the GNU General Public License as published by the Free Software
+Foundation, either version 3 of the License, or (at your option) any later
+version.
+
+This program is distributed in the hope that it will be useful, but WITHOUT ANY
+WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS FOR A
+PARTICULAR PURPOSE.  See the GNU General Public License for more details.
+
+You should have received a copy of the GNU General Public License along with
+this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+import java.io.*;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.*;
+import java.util.zip.*;
+
+// Runs many headless emulation jobs in parallel, one NES instance
+// per job, and reports speed and final state hashes for each.
+//
+// Usage: java BatchRunner <job file> [threads]
+//
+// Each line of the job file is: <rom file> [frames] [input file]
+// Empty lines and lines starting with '#' are skipped. The input
+// file has one line per frame with the joypad 1 button mask in hex
+// (bit n is InputHandler key n). No keys are pressed after its end.
+public class BatchRunner {
+
+    public static final int DEFAULT_FRAMES = 600;
+
+    // A single ROM/input pair and its results.
+    public static class Job {
+
+        public String romFile;
+        public String inputFile;
+        public int frames;
+
+        // Results:
+        public boolean ok;
+        public String error;
+        public int framesRun;
+        public double fps;
+        public long frameHash;
+        public long ramHash;
+
+        public Job(String romFile, int frames, String inputFile) {
+            this.romFile = romFile;
+            this.frames = frames;
+            this.inputFile = inputFile;
+        }
+
+        public String toString() {
+            if (!ok) {
+                return romFile + "  ERROR: " + error;
+            }
+            return romFile
+                    + (inputFile != null ? " [" + inputFile + "]" : "")
+                    + "  frames=" + framesRun
+                    + "  fps=" + (int) fps
+                    + "  frame=" + Misc.hex16((int) (frameHash >> 16)) + Misc.hex16((int) frameHash & 0xFFFF)
+                    + "  ram=" + Misc.hex16((int) (ramHash >> 16)) + Misc.hex16((int) ramHash & 0xFFFF);
+        }
+    }
+
+    public static void main(String[] args) {
+
+        if (args.length < 1) {
+            System.out.println("Usage: java BatchRunner <job file> [threads]");
+            return;
+        }
+
+        int threads = Runtime.getRuntime().availableProcessors();
+        if (args.length > 1) {
+            try {
+                threads = Integer.parseInt(args[1]);
+            } catch (NumberFormatException e) {
+                System.out.println("Invalid thread count: " + args[1]);
+                return;
+            }
+        }
+
+        Job[] jobs;
+        try {
+            jobs = readJobs(args[0]);
+        } catch (IOException e) {
+            System.out.println("Unable to read job file: " + e.getMessage());
+            return;
+        }
+
+        long t1 = System.nanoTime();
+        runAll(jobs, threads);
+        long t2 = System.nanoTime();
+
+        int totalFrames = 0;
+        int failed = 0;
+        for (int i = 0; i < jobs.length; i++) {
+            System.out.println(jobs[i]);
+            totalFrames += jobs[i].framesRun;
+            if (!jobs[i].ok) {
+                failed++;
+            }
+        }
+
+        double seconds = (t2 - t1) / 1000000000.0;
+        System.out.println("Jobs:       " + jobs.length + " (" + failed + " failed)");
+        System.out.println("Threads:    " + threads);
+        System.out.println("Time:       " + seconds + " s");
+        System.out.println("Frames/sec: " + (totalFrames / seconds));
+
+    }
+
+    // Reads a job file (see above).
+    public static Job[] readJobs(String fileName) throws IOException {
+
+        List<Job> list = new ArrayList<Job>();
+        BufferedReader in = new BufferedReader(new FileReader(fileName));
+        try {
+            String line;
+            int lineNumber = 0;
+            while ((line = in.readLine()) != null) {
+                lineNumber++;
+                line = line.trim();
+                if (line.length() == 0 || line.startsWith("#")) {
+                    continue;
+                }
+                String[] f = line.split("\\s+");
+                int frames = DEFAULT_FRAMES;
+                if (f.length > 1) {
+                    try {
+                        frames = Integer.parseInt(f[1]);
+                    } catch (NumberFormatException e) {
+                        throw new IOException("Invalid frame count on line " + lineNumber + ": " + line);
+                    }
+                }
+                list.add(new Job(f[0], frames, f.length > 2 ? f[2] : null));
+            }
+        } finally {
+            in.close();
+        }
+
+        return list.toArray(new Job[list.size()]);
+
+    }
+
+    // Runs all jobs on a pool with the given number of threads,
+    // and waits for them to finish.
+    public static void runAll(Job[] jobs, int threads) {
+
+        ExecutorService pool = Executors.newFixedThreadPool(Math.max(1, threads));
+        for (int i = 0; i < jobs.length; i++) {
+            final Job job = jobs[i];
+            pool.execute(new Runnable() {
+
+                public void run() {
+                    runJob(job);
+                }
+            });
+        }
+
+        pool.shutdown();
+        try {
+            while (!pool.awaitTermination(1, TimeUnit.SECONDS)) {
+                // Still running.
+            }
+        } catch (InterruptedException e) {
+            pool.shutdownNow();
+            Thread.currentThread().interrupt();
+        }
+
+    }
+
+    // Runs a single job on the calling thread.
+    public static void runJob(Job job) {
+
+        HeadlessUI gui = new HeadlessUI();
+        NES nes = gui.getNES();
+
+        try {
+
+            int[] input = job.inputFile != null ? readInput(job.inputFile) : null;
+
+            if (!nes.loadRom(job.romFile)) {
+                job.error = "unable to load ROM";
+                return;
+            }
+
+            VirtualInputHandler joy1 = (VirtualInputHandler) gui.getJoy1();
+
+            long t1 = System.nanoTime();
+            int frame = 0;
+            for (; frame < job.frames; frame++) {
+                if (input != null) {
+                    joy1.setKeyStates(frame < input.length ? input[frame] : 0);
+                }
+                if (!nes.runFrame()) {
+                    break;
+                }
+            }
+            long t2 = System.nanoTime();
+
+            job.framesRun = frame;
+            job.fps = frame / ((t2 - t1) / 1000000000.0);
+            job.frameHash = hashFrame(gui.getFrameBuffer());
+            job.ramHash = hashRam(nes.getCpuMemory().mem);
+            job.ok = !nes.getCpu().crash;
+            if (!job.ok) {
+                job.error = "CPU crashed after " + frame + " frames";
+            }
+
+        } catch (Exception e) {
+
+            job.ok = false;
+            job.error = e.toString();
+
+        } finally {
+
+            nes.destroy();
+            gui.destroy();
+
+        }
+
+    }
+
+    // Reads per-frame joypad masks (see above).
+    static int[] readInput(String fileName) throws IOException {
+
+        List<Integer> list = new ArrayList<Integer>();
+        BufferedReader in = new BufferedReader(new FileReader(fileName));
+        try {
+            String line;
+            while ((line = in.readLine()) != null) {
+                line = line.trim();
+                list.add(line.length() == 0 ? 0 : Integer.parseInt(line, 16));
+            }
+        } finally {
+            in.close();
+        }
+
+        int[] input = new int[list.size()];
+        for (int i = 0; i < input.length; i++) {
+            input[i] = list.get(i);
+        }
+        return input;
+
+    }
+
+    // CRC32 of the frame buffer, 3 bytes (RGB) per pixel.
+    public static long hashFrame(int[] frame) {
+
+        byte[] b = new byte[frame.length * 3];
+        for (int i = 0, j = 0; i < frame.length; i++) {
+            b[j++] = (byte) (frame[i] >> 16);
+            b[j++] = (byte) (frame[i] >> 8);
+            b[j++] = (byte) frame[i];
+        }
+
+        CRC32 crc = new CRC32();
+        crc.update(b, 0, b.length);
+        return crc.getValue();
+
+    }
+
+    // CRC32 of the 2kB internal RAM.
+    public static long hashRam(short[] mem) {
+
+        byte[] b = new byte[0x800];
+        for (int i = 0; i < b.length; i++) {
+            b[i] = (byte) mem[i];
+        }
+
+        CRC32 crc = new CRC32();
+        crc.update(b, 0, b.length);
+        return crc.getValue();
+
+    }
+}
@@ -15,19 +15,28 @@ You should have received a copy of the GNU General Public License along with
 this program.  If not, see <http://www.gnu.org/licenses/>.
  */
 
+// Band-limited step synthesis. A sound source adds a step to the
+// buffer each time its output level changes, at a sub-sample
+// position, and the buffer is read out as resampled PCM. Each step
+// is stored as the differences of a band-limited (windowed sinc)
+// step, so reading out is a running sum.
 public class BlipBuffer {
 
+    // Fixed point bits of the step kernels:
+    public static final int STEP_BITS = 15;
+
     // These values must be set:
     public int win_size;
     public int smp_period;
     public int sinc_periods;
-    // Different samplings of bandlimited impulse:
+    // Different samplings of bandlimited impulse, each summing
+    // to 1 << STEP_BITS:
     public int[][] imp;
     // Difference buffer:
     public int[] diff;
-    // Last position changed in buffer:
+    // End of the part of the buffer that has been added to:
     int lastChanged;
-    // Previous end absolute value:
+    // Running sum at the start of the buffer:
     int prevSum;
     // DC removal:
     int dc_prev;
@@ -42,64 +51,76 @@ public class BlipBuffer {
         double[] buf = new double[smp_period * win_size];
 
 
-        // Sample sinc:
+        // Sample sinc, with a Blackman window:
         double si_p = sinc_periods;
         for (int i = 0; i < buf.length; i++) {
+            double w = (2.0 * Math.PI * ((double) i)) / ((double) buf.length);
             buf[i] = sinc(-si_p * Math.PI + (si_p * 2.0 * ((double) i) * Math.PI) / ((double) buf.length));
+            buf[i] *= 0.42 - 0.5 * Math.cos(w) + 0.08 * Math.cos(2.0 * w);
         }
 
-        // Fill into impulse buffer:
+        // Fill into impulse buffer, scaled so that every step
+        // has the same height:
         imp = new int[smp_period][win_size];
         for (int off = 0; off < smp_period; off++) {
             double sum = 0;
             for (int i = 0; i < win_size; i++) {
-                sum += 32768.0 * buf[i * smp_period + off];
-                imp[smp_period - 1 - off][i] = (int) sum;
+                sum += buf[i * smp_period + off];
+            }
+            int isum = 0;
+            for (int i = 0; i < win_size; i++) {
+                imp[smp_period - 1 - off][i] = (int) Math.round((1 << STEP_BITS) * buf[i * smp_period + off] / sum);
+                isum += imp[smp_period - 1 - off][i];
             }
+            imp[smp_period - 1 - off][win_size / 2] += (1 << STEP_BITS) - isum;
         }
 
         // Create difference buffer:
         diff = new int[bufferSize];
-        lastChanged = 0;
-        prevSum = 0;
-        dc_prev = 0;
-        dc_diff = 0;
-        dc_acc = 0;
+        clear();
 
     }
 
+    // Adds a step of the given height, at sample smpPos plus
+    // smpOffset / smp_period. The step is heard win_size / 2
+    // samples later.
     public void impulse(int smpPos, int smpOffset, int magnitude) {
 
-        // Add into difference buffer:
-        //if(smpPos+win_size < diff.length){
-        for (int i = lastChanged; i < smpPos + win_size; i++) {
-            diff[i] = prevSum;
-        }
+        int[] step = imp[smpOffset];
         for (int i = 0; i < win_size; i++) {
-            diff[smpPos + i] += (imp[smpOffset][i] * magnitude) >> 8;
+            diff[smpPos + i] += step[i] * magnitude;
+        }
+        if (smpPos + win_size > lastChanged) {
+            lastChanged = smpPos + win_size;
         }
-        lastChanged = smpPos + win_size;
-        prevSum = diff[smpPos + win_size - 1];
-    //}
 
     }
 
-    public int integrate() {
+    // Reads out the first count samples with the DC removed, and
+    // moves the rest of the buffer to the front.
+    public void read(int[] out, int offset, int count) {
 
         int sum = prevSum;
-        for (int i = 0; i < diff.length; i++) {
+        for (int i = 0; i < count; i++) {
 
             sum += diff[i];
 
             // Remove DC:
-            dc_diff = sum - dc_prev;
+            dc_diff = (sum >> STEP_BITS) - dc_prev;
             dc_prev += dc_diff;
             dc_acc += dc_diff - (dc_acc >> 10);
-            diff[i] = dc_acc;
+            out[offset + i] = dc_acc;
 
         }
         prevSum = sum;
-        return lastChanged;
+
+        int end = Math.max(lastChanged, count);
+        int rest = Math.max(lastChanged - count, 0);
+        System.arraycopy(diff, count, diff, 0, rest);
+        for (int i = rest; i < end; i++) {
+            diff[i] = 0;
+        }
+        lastChanged = rest;
 
     }
 
@@ -109,6 +130,10 @@ public class BlipBuffer {
             diff[i] = 0;
         }
         lastChanged = 0;
+        prevSum = 0;
+        dc_prev = 0;
+        dc_diff = 0;
+        dc_acc = 0;
 
     }
 
@@ -118,4 +143,4 @@ public class BlipBuffer {
         }
         return Math.sin(x) / x;
     }
-}
\ No newline at end of file
+}
@@ -38,6 +38,7 @@ public class BufferView extends JPanel {
     private int[] pix;
     private int[] pix_scaled;
     private int scaleMode;
+    private Scale scaler = new Scale();
     // FPS counter variables:
     private boolean showFPS = false;
     private long prevFrameTime;
@@ -158,6 +159,10 @@ public class BufferView extends JPanel {
 
         }
 
+        // Only software scaling benefits from knowing
+        // which scanlines changed since the last frame:
+        nes.ppu.trackScanlineChanges = scalingEnabled() && !useHWScaling();
+
 
         // Set background color:
         for (int i = 0; i < raster.length; i++) {
@@ -194,7 +199,7 @@ public class BufferView extends JPanel {
 
                 } else if (scaleMode == SCALE_RASTER) {
 
-                    Scale.doRasterScaling(pix, pix_scaled, nes.ppu.scanlineChanged);
+                    scaler.doRasterScaling(pix, pix_scaled, nes.ppu.scanlineChanged);
 
                 }
             }
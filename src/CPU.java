@@ -30,8 +30,59 @@ public final class CPU implements Runnable{
 	// References to other parts of NES :
 	private NES nes;
 	private MemoryMapper mmap;
+	private PPU ppu;
+	private PAPU papu;
 	private short[] mem;
 
+	// The mapper's page table (see PageTable):
+	private PageTable pages;
+	private short[][] readPage;
+	private int[] readOffset;
+	private short[][] writePage;
+	private int[] writeOffset;
+	private int[][] codePage;
+	private int[] romBank;
+
+	// Decoded instruction cache entries (see decode()):
+	private static final int DECODED = 1<<24;
+	private static final int UNDECODED = 1<<25;
+
+	// Kinds of fused sequence, kept in the top bits of the entry
+	// for the first instruction (see fuse()):
+	private static final int FUSED_SHIFT = 26;
+	private static final int FUSE_COPY = 1;			// LDA abs,X / STA abs,X
+	private static final int FUSE_DEX_BNE = 2;		// DEX / BNE
+	private static final int FUSE_DEY_BNE = 3;		// DEY / BNE
+	private static final int FUSE_INX_CPX_BNE = 4;	// INX / CPX #imm / BNE
+	private static final int FUSE_INY_CPY_BNE = 5;	// INY / CPY #imm / BNE
+	private static final int FUSE_ADD = 6;			// LDA zp / CLC / ADC #imm / STA zp
+	private static final int FUSE_ASL2 = 7;			// 2 to 4 x ASL A
+	private static final int FUSE_ASL3 = 8;
+	private static final int FUSE_ASL4 = 9;
+	private static final int FUSE_LSR2 = 10;		// 2 to 4 x LSR A
+	private static final int FUSE_LSR3 = 11;
+	private static final int FUSE_LSR4 = 12;
+
+	// The opcodes of each kind:
+	private static final int[][] FUSED = {
+		null,
+		{0xBD,0x9D},
+		{0xCA,0xD0},
+		{0x88,0xD0},
+		{0xE8,0xE0,0xD0},
+		{0xC8,0xC0,0xD0},
+		{0xA5,0x18,0x69,0x85},
+		{0x0A,0x0A},
+		{0x0A,0x0A,0x0A},
+		{0x0A,0x0A,0x0A,0x0A},
+		{0x4A,0x4A},
+		{0x4A,0x4A,0x4A},
+		{0x4A,0x4A,0x4A,0x4A},
+	};
+
+	// Most cycles a fused sequence takes before its last instruction:
+	private static final int FUSED_CYCLES = 7;
+
 	// CPU Registers:
 	public int REG_ACC_NEW;
 	public int REG_X_NEW;
@@ -67,6 +118,36 @@ public final class CPU implements Runnable{
 	public boolean stopRunning;
 	public boolean crash;
 
+	// Stepping (see NES.runFrame and NES.runCycles):
+	boolean stepFrame;	// Return from emulate() when a frame is done
+	int cycleBudget;	// Return after this many cycles (0 = no limit)
+	int cyclesRun;		// Cycles run by the last budgeted emulate()
+
+	// Use the two-level reference interpreter instead of the flat one:
+	boolean referenceInterpreter;
+
+	// Skip the passes of idle loops up to the next event (flat
+	// interpreter only):
+	boolean idleLoopSkipping = true;
+
+	// Compiles hot code in PRG-ROM to bytecode (flat interpreter
+	// only, null when off):
+	private Recompiler recompiler;
+
+	// Run common sequences of instructions as one (flat
+	// interpreter only, see fuse()):
+	boolean fusing = true;
+
+	// Largest idle loop, in bytes, and most cycles skipped at once:
+	private static final int IDLE_LOOP_SIZE = 12;
+	private static final int IDLE_SKIP_MAX = 0x10000;
+
+	// Loop last seen by idleLoopSkip(), when, and time of the
+	// last event:
+	private int idleJumpAddr = -1;
+	private long idleClock;
+	private long eventClock;
+
 
 	// Constructor:
 	public CPU(NES nes){
@@ -76,142 +157,1752 @@ public final class CPU implements Runnable{
 	// Initialize:
 	public void init(){
 
-		// Get Op data:
-		opdata = CpuInfo.getOpData();
+		// Get Op data:
+		opdata = CpuInfo.getOpData();
+
+		// Get Memory Mapper:
+		setMapper(nes.getMemoryMapper());
+		ppu = nes.getPpu();
+		papu = nes.getPapu();
+
+		// Reset crash flag:
+		crash = false;
+
+		// Set flags:
+		F_BRK_NEW = 1;
+		F_NOTUSED_NEW = 1;
+		F_INTERRUPT_NEW = 1;
+		irqRequested = false;
+
+	}
+
+	public void stateLoad(ByteBuffer buf){
+
+		if(buf.readByte()==1){
+			// Version 1
+
+			// Registers:
+			setStatus(buf.readInt());
+			REG_ACC_NEW = buf.readInt();
+			REG_PC_NEW  = buf.readInt();
+			REG_SP      = buf.readInt();
+			REG_X_NEW   = buf.readInt();
+			REG_Y_NEW   = buf.readInt();
+
+			// Cycles to halt:
+			cyclesToHalt = buf.readInt();
+
+		}
+
+	}
+
+	public void stateSave(ByteBuffer buf){
+
+		// Save info version:
+		buf.putByte((short)1);
+
+		// Save registers:
+		buf.putInt(getStatus());
+		buf.putInt(REG_ACC_NEW);
+		buf.putInt(REG_PC_NEW );
+		buf.putInt(REG_SP     );
+		buf.putInt(REG_X_NEW  );
+		buf.putInt(REG_Y_NEW  );
+
+		// Cycles to halt:
+		buf.putInt(cyclesToHalt);
+
+	}
+
+	public void reset(){
+
+		REG_ACC_NEW = 0;
+		REG_X_NEW = 0;
+		REG_Y_NEW = 0;
+
+		irqRequested = false;
+		irqType = 0;
+
+		// Reset Stack pointer:
+		REG_SP = 0x01FF;
+
+		// Reset Program counter:
+		REG_PC_NEW = 0x8000-1;
+
+		// Reset Status register:
+		REG_STATUS_NEW = 0x28;
+		setStatus(0x28);
+
+		// Reset crash flag:
+		crash = false;
+
+		// Set flags:
+		F_CARRY_NEW = 0;
+		F_DECIMAL_NEW = 0;
+		F_INTERRUPT_NEW = 1;
+		F_OVERFLOW_NEW = 0;
+		F_SIGN_NEW = 0;
+		F_ZERO_NEW = 0;
+
+		F_NOTUSED_NEW = 1;
+		F_BRK_NEW = 1;
+
+		cyclesToHalt = 0;
+
+
+	}
+
+	public synchronized void beginExecution(){
+
+		if(myThread!=null && myThread.isAlive()){
+			endExecution();
+		}
+
+		myThread = new Thread(this);
+		myThread.start();
+		myThread.setPriority(Thread.MIN_PRIORITY);
+
+	}
+
+	public synchronized void endExecution(){
+		//System.out.println("* Attempting to stop CPU thread.");
+		if(myThread!=null && myThread.isAlive()){
+			try{
+				stopRunning = true;
+				myThread.join();
+
+			}catch(InterruptedException ie){
+				//System.out.println("** Unable to stop CPU thread!");
+				ie.printStackTrace();
+			}
+		}else{
+			//System.out.println("* CPU Thread was not alive.");
+		}
+	}
+
+	public boolean isRunning(){
+		return (myThread!=null && myThread.isAlive());
+	}
+
+	public void run(){
+		initRun();
+		emulate();
+	}
+
+	public synchronized void initRun(){
+		stopRunning = false;
+	}
+
+	// Emulates cpu instructions until stopped, or until
+	// the frame or cycle budget set up for stepping is done.
+	public void emulate(){
+		if(referenceInterpreter){
+			emulateReference();
+		}else{
+			emulateFlat();
+		}
+	}
+
+	// Interpreter with one switch over all 256 opcodes.
+	private void emulateFlat(){
+
+
+		// NES Memory
+		// (when memory mappers switch ROM banks
+		// this will be written to, no need to
+		// update reference):
+		mem = nes.cpuMem.mem;
+
+		// References to other parts of NES:
+		MemoryMapper mmap = nes.memMapper;
+
+
+		// Registers:
+		int REG_ACC 	= REG_ACC_NEW;
+		int REG_X 		= REG_X_NEW;
+		int REG_Y 		= REG_Y_NEW;
+		int REG_STATUS 	= REG_STATUS_NEW;
+		int REG_PC 		= REG_PC_NEW;
+
+		// Status flags:
+		int F_CARRY 	= F_CARRY_NEW;
+		int F_ZERO 	= (F_ZERO_NEW==0?1:0);
+		int F_INTERRUPT = F_INTERRUPT_NEW;
+		int F_DECIMAL 	= F_DECIMAL_NEW;
+		int F_NOTUSED   = F_NOTUSED_NEW;
+		int F_BRK 	= F_BRK_NEW;
+		int F_OVERFLOW 	= F_OVERFLOW_NEW;
+		int F_SIGN 	= F_SIGN_NEW;
+
+
+		// Misc. variables
+		int opinf=0;
+		int opcode=0;
+		int opaddr=0;
+		int addr=0;
+		int palCnt=0;
+		int cycleCount=0;
+		int operand=0;
+		int[] code;
+		int temp;
+		int add;
+		int fused=0;
+		short[] page;
+		int at;
+
+		boolean palEmu = nes.palEmulation;
+		boolean asApplet = nes.appletMode;
+		Scheduler sched = nes.scheduler;
+
+		// Blocks count cycles by instruction, so they're left out
+		// with PAL timing:
+		Recompiler recompiler = palEmu ? null : this.recompiler;
+		CompiledBlock block;
+		if(recompiler!=null){
+			recompiler.mem = mem;
+		}
+		boolean fuse = fusing && !palEmu;
+		long start = sched.clock;
+		if(cycleBudget>0){
+			sched.schedule(Scheduler.STEP,start+cycleBudget);
+		}
+		stopRunning = false;
+
+		while(true){
+
+			if(cycleCount>0){
+
+				// Let the other units catch up with the last instruction.
+				// This is done here rather than after the switch so that the
+				// JIT inlines it before running out of its size budget:
+
+				if(palEmu){
+					palCnt++;
+					if(palCnt==5){
+						palCnt=0;
+						cycleCount++;
+					}
+				}
+
+				// DMA and DMC stalls:
+				if(cyclesToHalt>0){
+					cycleCount += cyclesToHalt;
+					cyclesToHalt = 0;
+				}
+
+				// Only units with a deadline that's due are run:
+				sched.clock += cycleCount;
+				if(sched.clock>=sched.next){
+					runEvents(sched,asApplet);
+					if(sched.isDue(Scheduler.STEP))break;
+				}
+
+				// After a branch or jump back, see if it's an idle loop:
+				if(((opcode&0x1F)==0x10 || opcode==0x4C) && REG_PC<=opaddr && idleLoopSkipping && !palEmu){
+					sched.clock += idleLoopSkip(sched,REG_PC+1,opaddr+1);
+				}
+
+			}
+
+			if(stopRunning)break;
+
+			// Check interrupts:
+			if(irqRequested){
+
+				temp = packStatus(F_CARRY,F_ZERO,F_INTERRUPT,F_DECIMAL,F_BRK,F_NOTUSED,F_OVERFLOW,F_SIGN);
+
+				REG_PC_NEW = REG_PC;
+				F_INTERRUPT_NEW = F_INTERRUPT;
+				switch(irqType){
+					case 0:{
+
+						// Normal IRQ:
+						if(F_INTERRUPT!=0){
+							////System.out.println("Interrupt was masked.");
+							break;
+						}
+						doIrq(temp);
+						////System.out.println("Did normal IRQ. I="+F_INTERRUPT);
+						break;
+
+					}case 1:{
+
+						// NMI:
+						doNonMaskableInterrupt(temp);
+						break;
+
+					}case 2:{
+
+						// Reset:
+						doResetInterrupt();
+						break;
+
+					}
+				}
+
+				REG_PC = REG_PC_NEW;
+				F_INTERRUPT = F_INTERRUPT_NEW;
+				F_BRK = F_BRK_NEW;
+				irqRequested = false;
+
+			}
+
+			// Fetch the instruction and its operand. Code in ROM is
+			// decoded once, and then read back from the page's cache:
+			addr = (REG_PC+1)&0xFFFF;
+			code = codePage[addr>>8];
+			if(code==null && romBank[addr>>8]>=0){
+				// First fetch from this ROM bank:
+				code = pages.loadCode(addr>>8);
+			}
+			opinf = 0;
+			if(code!=null){
+				temp = readOffset[addr>>8]+(addr&0xFF);
+				opinf = code[temp];
+				if(opinf==0){
+					opinf = decode(readPage[addr>>8],temp,addr);
+					code[temp] = opinf;
+				}
+
+				// Run the compiled block starting here instead, if
+				// there is one and no event falls due inside it. A
+				// stall still to come is added after one instruction,
+				// so it has to wait for the interpreter:
+				if(recompiler!=null && cyclesToHalt==0){
+					block = recompiler.getBlock(code,temp,addr);
+					if(block!=null && sched.clock+block.maxCycles<sched.next){
+						recompiler.a = REG_ACC;
+						recompiler.x = REG_X;
+						recompiler.y = REG_Y;
+						recompiler.sp = REG_SP;
+						recompiler.carry = F_CARRY;
+						recompiler.zero = F_ZERO;
+						recompiler.interrupt = F_INTERRUPT;
+						recompiler.decimal = F_DECIMAL;
+						recompiler.brk = F_BRK;
+						recompiler.notused = F_NOTUSED;
+						recompiler.overflow = F_OVERFLOW;
+						recompiler.sign = F_SIGN;
+						recompiler.exit = false;
+						cycleCount = block.run(recompiler);
+						REG_ACC = recompiler.a;
+						REG_X = recompiler.x;
+						REG_Y = recompiler.y;
+						REG_SP = recompiler.sp;
+						F_CARRY = recompiler.carry;
+						F_ZERO = recompiler.zero;
+						F_INTERRUPT = recompiler.interrupt;
+						F_DECIMAL = recompiler.decimal;
+						F_BRK = recompiler.brk;
+						F_NOTUSED = recompiler.notused;
+						F_OVERFLOW = recompiler.overflow;
+						F_SIGN = recompiler.sign;
+						REG_PC = recompiler.pc;
+						opaddr = recompiler.opaddr;
+						opcode = recompiler.opcode;
+						continue;
+					}
+				}
+			}
+			if((opinf&DECODED)!=0){
+				opcode = opinf&0xFF;
+				operand = (opinf>>8)&0xFFFF;
+				fused = opinf>>>FUSED_SHIFT;
+				opinf = opdata[opcode];
+			}else{
+				fused = 0;
+				opcode = load(addr);
+				opinf = opdata[opcode];
+				switch((opinf>>16)&0xFF){
+					case 2: operand = load(REG_PC+2); break;
+					case 3: operand = load16bit(REG_PC+2); break;
+					default: operand = 0;
+				}
+			}
+			cycleCount = (opinf>>24);
+
+			// Increment PC by number of op bytes:
+			opaddr = REG_PC;
+			REG_PC+=((opinf>>16)&0xFF);
+
+			// A fused sequence runs up to its last instruction here, if
+			// no event falls due before then and no stall is waiting to
+			// be added after this instruction. The last one is left to
+			// the switch below, with the clock moved on to its start:
+			if(fused!=0 && fuse && cyclesToHalt==0 && sched.clock+FUSED_CYCLES<sched.next){
+				page = readPage[addr>>8];
+				at = readOffset[addr>>8]+(addr&0xFF);
+				switch(fused){
+					case FUSE_COPY:{
+
+						// LDA abs,X, unless it reads I/O:
+						addr = absIndexed(operand,REG_X);
+						if((addr&0xFFFF)>=0x2000 && readPage[(addr>>8)&0xFF]==null){
+							fused = 0;
+							break;
+						}
+						cycleCount += addr>>16;
+						REG_ACC = load(addr&0xFFFF);
+						F_SIGN = (REG_ACC>>7)&1;
+						F_ZERO = REG_ACC;
+						opcode = 0x9D;
+						operand = page[at+4]|(page[at+5]<<8);
+						break;
+
+					}case FUSE_DEX_BNE:{
+
+						// DEX
+						REG_X = (REG_X-1)&0xFF;
+						F_SIGN = (REG_X>>7)&1;
+						F_ZERO = REG_X;
+						opcode = 0xD0;
+						operand = page[at+2];
+						break;
+
+					}case FUSE_DEY_BNE:{
+
+						// DEY
+						REG_Y = (REG_Y-1)&0xFF;
+						F_SIGN = (REG_Y>>7)&1;
+						F_ZERO = REG_Y;
+						opcode = 0xD0;
+						operand = page[at+2];
+						break;
+
+					}case FUSE_INX_CPX_BNE:{
+
+						// INX / CPX #imm, whose flags replace those of INX:
+						REG_X = (REG_X+1)&0xFF;
+						temp = REG_X - page[at+2];
+						F_CARRY = ~temp>>>31;
+						F_SIGN = (temp>>7)&1;
+						F_ZERO = temp&0xFF;
+						cycleCount += 2;
+						REG_PC += 2;
+						opcode = 0xD0;
+						operand = page[at+4];
+						break;
+
+					}case FUSE_INY_CPY_BNE:{
+
+						// INY / CPY #imm, whose flags replace those of INY:
+						REG_Y = (REG_Y+1)&0xFF;
+						temp = REG_Y - page[at+2];
+						F_CARRY = ~temp>>>31;
+						F_SIGN = (temp>>7)&1;
+						F_ZERO = temp&0xFF;
+						cycleCount += 2;
+						REG_PC += 2;
+						opcode = 0xD0;
+						operand = page[at+4];
+						break;
+
+					}case FUSE_ADD:{
+
+						// LDA zp / CLC / ADC #imm, as an add without carry:
+						REG_ACC = mem[operand];
+						add = page[at+4];
+						temp = REG_ACC + add;
+						F_OVERFLOW = ((REG_ACC^temp)&(add^temp)&0x80)>>7;
+						F_CARRY = temp>>8;
+						F_SIGN = (temp>>7)&1;
+						F_ZERO = temp&0xFF;
+						REG_ACC = temp&0xFF;
+						cycleCount += 4;
+						REG_PC += 3;
+						opcode = 0x85;
+						operand = page[at+6];
+						break;
+
+					}case FUSE_ASL2: case FUSE_ASL3: case FUSE_ASL4:{
+
+						// All the ASL A but the last, whose flags replace theirs:
+						temp = fused-FUSE_ASL2+1;
+						REG_ACC = (REG_ACC<<temp)&0xFF;
+						cycleCount = temp*2;
+						REG_PC += temp-1;
+						break;
+
+					}case FUSE_LSR2: case FUSE_LSR3: case FUSE_LSR4:{
+
+						// All the LSR A but the last:
+						temp = fused-FUSE_LSR2+1;
+						REG_ACC >>= temp;
+						cycleCount = temp*2;
+						REG_PC += temp-1;
+						break;
+
+					}
+				}
+				if(fused!=0){
+					sched.clock += cycleCount;
+					opaddr = REG_PC;
+					opinf = opdata[opcode];
+					cycleCount = (opinf>>24);
+					REG_PC+=((opinf>>16)&0xFF);
+				}
+			}
+
+			// ----------------------------------------------------------------------------------------------------
+			// Decode & execute instruction. Each opcode has its address mode
+			// and page crossing cycles built in, so there's a single dispatch:
+			// ----------------------------------------------------------------------------------------------------
+
+			switch(opcode){
+				case 0x00:{
+
+					// BRK
+					REG_PC+=2;
+					push((REG_PC>>8)&255);
+					push(REG_PC&255);
+					F_BRK = 1;
+					push(packStatus(F_CARRY,F_ZERO,F_INTERRUPT,F_DECIMAL,F_BRK,F_NOTUSED,F_OVERFLOW,F_SIGN));
+					F_INTERRUPT = 1;
+					REG_PC = load16bit(0xFFFE);
+					REG_PC--;
+					break;
+
+				}case 0x01:{
+
+					// ORA (zp,X)
+					addr = preIndexedIndirect(operand,REG_X);
+					cycleCount += addr>>16;
+					addr &= 0xFFFF;
+					REG_ACC = (load(addr)|REG_ACC)&255;
+					F_SIGN = (REG_ACC>>7)&1;
+					F_ZERO = REG_ACC;
+					break;
+
+				}case 0x05:{
+
+					// ORA zp
+					addr = operand;
+					REG_ACC = (load(addr)|REG_ACC)&255;
+					F_SIGN = (REG_ACC>>7)&1;
+					F_ZERO = REG_ACC;
+					break;
+
+				}case 0x06: case 0x0E: case 0x16: case 0x1E:{
+
+					// ASL zp/abs/zp,X/abs,X
+					addr = rmwAddress(opcode,operand,REG_X);
+					temp = load(addr);
+					F_CARRY = (temp>>7)&1;
+					temp = (temp<<1)&255;
+					F_SIGN = (temp>>7)&1;
+					F_ZERO = temp;
+					write(addr,(short)temp);
+					break;
+
+				}case 0x08:{
+
+					// PHP
+					F_BRK = 1;
+					push(packStatus(F_CARRY,F_ZERO,F_INTERRUPT,F_DECIMAL,F_BRK,F_NOTUSED,F_OVERFLOW,F_SIGN));
+					break;
+
+				}case 0x09:{
+
+					// ORA #imm
+					REG_ACC = (operand|REG_ACC)&255;
+					F_SIGN = (REG_ACC>>7)&1;
+					F_ZERO = REG_ACC;
+					break;
+
+				}case 0x0A:{
+
+					// ASL A
+					F_CARRY = (REG_ACC>>7)&1;
+					REG_ACC = (REG_ACC<<1)&255;
+					F_SIGN = (REG_ACC>>7)&1;
+					F_ZERO = REG_ACC;
+					break;
+
+				}case 0x0D:{
+
+					// ORA abs
+					addr = operand;
+					REG_ACC = (load(addr)|REG_ACC)&255;
+					F_SIGN = (REG_ACC>>7)&1;
+					F_ZERO = REG_ACC;
+					break;
+
+				}case 0x10:{
+
+					// BPL rel
+					if(F_SIGN == 0){
+						addr = relative(operand,REG_PC);
+						cycleCount += branchCycles(opaddr,addr);
+						REG_PC = addr;
+					}
+					break;
+
+				}case 0x11:{
+
+					// ORA (zp),Y
+					addr = postIndexedIndirect(operand,REG_Y)&0xFFFF;
+					REG_ACC = (load(addr)|REG_ACC)&255;
+					F_SIGN = (REG_ACC>>7)&1;
+					F_ZERO = REG_ACC;
+					break;
+
+				}case 0x15:{
+
+					// ORA zp,X
+					addr = (operand+REG_X)&0xFF;
+					REG_ACC = (load(addr)|REG_ACC)&255;
+					F_SIGN = (REG_ACC>>7)&1;
+					F_ZERO = REG_ACC;
+					break;
+
+				}case 0x18:{
+
+					// CLC
+					F_CARRY = 0;
+					break;
+
+				}case 0x19:{
+
+					// ORA abs,Y
+					addr = absIndexed(operand,REG_Y);
+					cycleCount += addr>>16;
+					addr &= 0xFFFF;
+					REG_ACC = (load(addr)|REG_ACC)&255;
+					F_SIGN = (REG_ACC>>7)&1;
+					F_ZERO = REG_ACC;
+					break;
+
+				}case 0x1D:{
+
+					// ORA abs,X
+					addr = absIndexed(operand,REG_X);
+					cycleCount += addr>>16;
+					addr &= 0xFFFF;
+					REG_ACC = (load(addr)|REG_ACC)&255;
+					F_SIGN = (REG_ACC>>7)&1;
+					F_ZERO = REG_ACC;
+					break;
+
+				}case 0x20:{
+
+					// JSR abs
+					addr = operand;
+					push((REG_PC>>8)&255);
+					push(REG_PC&255);
+					REG_PC = addr-1;
+					break;
+
+				}case 0x21:{
+
+					// AND (zp,X)
+					addr = preIndexedIndirect(operand,REG_X);
+					cycleCount += addr>>16;
+					addr &= 0xFFFF;
+					REG_ACC = REG_ACC & load(addr);
+					F_SIGN = (REG_ACC>>7)&1;
+					F_ZERO = REG_ACC;
+					break;
+
+				}case 0x24:{
+
+					// BIT zp
+					addr = operand;
+					temp = load(addr);
+					F_SIGN = (temp>>7)&1;
+					F_OVERFLOW = (temp>>6)&1;
+					temp &= REG_ACC;
+					F_ZERO = temp;
+					break;
+
+				}case 0x25:{
+
+					// AND zp
+					addr = operand;
+					REG_ACC = REG_ACC & load(addr);
+					F_SIGN = (REG_ACC>>7)&1;
+					F_ZERO = REG_ACC;
+					break;
+
+				}case 0x26: case 0x2E: case 0x36: case 0x3E:{
+
+					// ROL zp/abs/zp,X/abs,X
+					addr = rmwAddress(opcode,operand,REG_X);
+					temp = load(addr);
+					add = F_CARRY;
+					F_CARRY = (temp>>7)&1;
+					temp = ((temp<<1)&0xFF)+add;
+					write(addr,(short)temp);
+					F_SIGN = (temp>>7)&1;
+					F_ZERO = temp;
+					break;
+
+				}case 0x28:{
+
+					// PLP
+					temp = pull();
+					F_CARRY     = (temp   )&1;
+					F_ZERO      = ~temp&2;
+					F_INTERRUPT = (temp>>2)&1;
+					F_DECIMAL   = (temp>>3)&1;
+					F_BRK       = (temp>>4)&1;
+					F_OVERFLOW  = (temp>>6)&1;
+					F_SIGN      = (temp>>7)&1;
+					F_NOTUSED   = 1;
+					break;
+
+				}case 0x29:{
+
+					// AND #imm
+					REG_ACC = REG_ACC & operand;
+					F_SIGN = (REG_ACC>>7)&1;
+					F_ZERO = REG_ACC;
+					break;
+
+				}case 0x2A:{
+
+					// ROL A
+					add = F_CARRY;
+					F_CARRY = (REG_ACC>>7)&1;
+					REG_ACC = ((REG_ACC<<1)&0xFF)+add;
+					F_SIGN = (REG_ACC>>7)&1;
+					F_ZERO = REG_ACC;
+					break;
+
+				}case 0x2C:{
+
+					// BIT abs
+					addr = operand;
+					temp = load(addr);
+					F_SIGN = (temp>>7)&1;
+					F_OVERFLOW = (temp>>6)&1;
+					temp &= REG_ACC;
+					F_ZERO = temp;
+					break;
+
+				}case 0x2D:{
+
+					// AND abs
+					addr = operand;
+					REG_ACC = REG_ACC & load(addr);
+					F_SIGN = (REG_ACC>>7)&1;
+					F_ZERO = REG_ACC;
+					break;
+
+				}case 0x30:{
+
+					// BMI rel
+					if(F_SIGN == 1){
+						cycleCount++;
+						REG_PC = relative(operand,REG_PC);
+					}
+					break;
+
+				}case 0x31:{
+
+					// AND (zp),Y
+					addr = postIndexedIndirect(operand,REG_Y)&0xFFFF;
+					REG_ACC = REG_ACC & load(addr);
+					F_SIGN = (REG_ACC>>7)&1;
+					F_ZERO = REG_ACC;
+					break;
+
+				}case 0x35:{
+
+					// AND zp,X
+					addr = (operand+REG_X)&0xFF;
+					REG_ACC = REG_ACC & load(addr);
+					F_SIGN = (REG_ACC>>7)&1;
+					F_ZERO = REG_ACC;
+					break;
+
+				}case 0x38:{
+
+					// SEC
+					F_CARRY = 1;
+					break;
+
+				}case 0x39:{
+
+					// AND abs,Y
+					addr = absIndexed(operand,REG_Y);
+					cycleCount += addr>>16;
+					addr &= 0xFFFF;
+					REG_ACC = REG_ACC & load(addr);
+					F_SIGN = (REG_ACC>>7)&1;
+					F_ZERO = REG_ACC;
+					break;
+
+				}case 0x3D:{
+
+					// AND abs,X
+					addr = absIndexed(operand,REG_X);
+					cycleCount += addr>>16;
+					addr &= 0xFFFF;
+					REG_ACC = REG_ACC & load(addr);
+					F_SIGN = (REG_ACC>>7)&1;
+					F_ZERO = REG_ACC;
+					break;
+
+				}case 0x40:{
+
+					// RTI
+					temp = pull();
+					F_CARRY     = (temp   )&1;
+					F_ZERO      = ~temp&2;
+					F_INTERRUPT = (temp>>2)&1;
+					F_DECIMAL   = (temp>>3)&1;
+					F_BRK       = (temp>>4)&1;
+					F_OVERFLOW  = (temp>>6)&1;
+					F_SIGN      = (temp>>7)&1;
+					F_NOTUSED   = 1;
+					REG_PC = pull();
+					REG_PC += (pull()<<8);
+					if(REG_PC==0xFFFF){
+						return;
+					}
+					REG_PC--;
+					break;
+
+				}case 0x41:{
+
+					// EOR (zp,X)
+					addr = preIndexedIndirect(operand,REG_X);
+					cycleCount += addr>>16;
+					addr &= 0xFFFF;
+					REG_ACC = (load(addr)^REG_ACC)&0xFF;
+					F_SIGN = (REG_ACC>>7)&1;
+					F_ZERO = REG_ACC;
+					break;
+
+				}case 0x45:{
+
+					// EOR zp
+					addr = operand;
+					REG_ACC = (load(addr)^REG_ACC)&0xFF;
+					F_SIGN = (REG_ACC>>7)&1;
+					F_ZERO = REG_ACC;
+					break;
+
+				}case 0x46: case 0x4E: case 0x56: case 0x5E:{
+
+					// LSR zp/abs/zp,X/abs,X
+					addr = rmwAddress(opcode,operand,REG_X);
+					temp = load(addr);
+					F_CARRY = temp&1;
+					temp >>= 1;
+					write(addr,(short)temp);
+					F_SIGN = 0;
+					F_ZERO = temp;
+					break;
+
+				}case 0x48:{
+
+					// PHA
+					push(REG_ACC);
+					break;
+
+				}case 0x49:{
+
+					// EOR #imm
+					REG_ACC = (operand^REG_ACC)&0xFF;
+					F_SIGN = (REG_ACC>>7)&1;
+					F_ZERO = REG_ACC;
+					break;
+
+				}case 0x4A:{
+
+					// LSR A
+					F_CARRY = REG_ACC&1;
+					REG_ACC >>= 1;
+					F_SIGN = 0;
+					F_ZERO = REG_ACC;
+					break;
+
+				}case 0x4C:{
+
+					// JMP abs
+					addr = operand;
+					REG_PC = addr-1;
+					break;
+
+				}case 0x4D:{
+
+					// EOR abs
+					addr = operand;
+					REG_ACC = (load(addr)^REG_ACC)&0xFF;
+					F_SIGN = (REG_ACC>>7)&1;
+					F_ZERO = REG_ACC;
+					break;
+
+				}case 0x50:{
+
+					// BVC rel
+					if(F_OVERFLOW == 0){
+						addr = relative(operand,REG_PC);
+						cycleCount += branchCycles(opaddr,addr);
+						REG_PC = addr;
+					}
+					break;
+
+				}case 0x51:{
+
+					// EOR (zp),Y
+					addr = postIndexedIndirect(operand,REG_Y);
+					cycleCount += addr>>16;
+					addr &= 0xFFFF;
+					REG_ACC = (load(addr)^REG_ACC)&0xFF;
+					F_SIGN = (REG_ACC>>7)&1;
+					F_ZERO = REG_ACC;
+					break;
+
+				}case 0x55:{
+
+					// EOR zp,X
+					addr = (operand+REG_X)&0xFF;
+					REG_ACC = (load(addr)^REG_ACC)&0xFF;
+					F_SIGN = (REG_ACC>>7)&1;
+					F_ZERO = REG_ACC;
+					break;
+
+				}case 0x58:{
+
+					// CLI
+					F_INTERRUPT = 0;
+					break;
+
+				}case 0x59:{
+
+					// EOR abs,Y
+					addr = absIndexed(operand,REG_Y);
+					cycleCount += addr>>16;
+					addr &= 0xFFFF;
+					REG_ACC = (load(addr)^REG_ACC)&0xFF;
+					F_SIGN = (REG_ACC>>7)&1;
+					F_ZERO = REG_ACC;
+					break;
+
+				}case 0x5D:{
+
+					// EOR abs,X
+					addr = absIndexed(operand,REG_X);
+					cycleCount += addr>>16;
+					addr &= 0xFFFF;
+					REG_ACC = (load(addr)^REG_ACC)&0xFF;
+					F_SIGN = (REG_ACC>>7)&1;
+					F_ZERO = REG_ACC;
+					break;
+
+				}case 0x60:{
+
+					// RTS
+					REG_PC = pull();
+					REG_PC += (pull()<<8);
+					if(REG_PC==0xFFFF){
+						return;
+					}
+					break;
+
+				}case 0x61: case 0xE1:{
+
+					// ADC/SBC (zp,X)
+					addr = preIndexedIndirect(operand,REG_X);
+					cycleCount += addr>>16;
+					addr &= 0xFFFF;
+					add = load(addr);
+					// SBC (opcode bit 7 set) is ADC with the operand inverted:
+					add ^= -(opcode>>7)&0xFF;
+					temp = REG_ACC + add + F_CARRY;
+					F_OVERFLOW = ((REG_ACC^temp)&(add^temp)&0x80)>>7;
+					F_CARRY = temp>>8;
+					F_SIGN = (temp>>7)&1;
+					F_ZERO = temp&0xFF;
+					REG_ACC = temp&0xFF;
+					break;
+
+				}case 0x65: case 0xE5:{
+
+					// ADC/SBC zp
+					addr = operand;
+					add = load(addr);
+					// SBC (opcode bit 7 set) is ADC with the operand inverted:
+					add ^= -(opcode>>7)&0xFF;
+					temp = REG_ACC + add + F_CARRY;
+					F_OVERFLOW = ((REG_ACC^temp)&(add^temp)&0x80)>>7;
+					F_CARRY = temp>>8;
+					F_SIGN = (temp>>7)&1;
+					F_ZERO = temp&0xFF;
+					REG_ACC = temp&0xFF;
+					break;
+
+				}case 0x66: case 0x6E: case 0x76: case 0x7E:{
+
+					// ROR zp/abs/zp,X/abs,X
+					addr = rmwAddress(opcode,operand,REG_X);
+					temp = load(addr);
+					add = F_CARRY<<7;
+					F_CARRY = temp&1;
+					temp = (temp>>1)+add;
+					write(addr,(short)temp);
+					F_SIGN = (temp>>7)&1;
+					F_ZERO = temp;
+					break;
+
+				}case 0x68:{
+
+					// PLA
+					REG_ACC = pull();
+					F_SIGN = (REG_ACC>>7)&1;
+					F_ZERO = REG_ACC;
+					break;
+
+				}case 0x69: case 0xE9:{
+
+					// ADC/SBC #imm
+					add = operand;
+					// SBC (opcode bit 7 set) is ADC with the operand inverted:
+					add ^= -(opcode>>7)&0xFF;
+					temp = REG_ACC + add + F_CARRY;
+					F_OVERFLOW = ((REG_ACC^temp)&(add^temp)&0x80)>>7;
+					F_CARRY = temp>>8;
+					F_SIGN = (temp>>7)&1;
+					F_ZERO = temp&0xFF;
+					REG_ACC = temp&0xFF;
+					break;
+
+				}case 0x6A:{
+
+					// ROR A
+					add = F_CARRY<<7;
+					F_CARRY = REG_ACC&1;
+					REG_ACC = (REG_ACC>>1)+add;
+					F_SIGN = (REG_ACC>>7)&1;
+					F_ZERO = REG_ACC;
+					break;
+
+				}case 0x6C:{
+
+					// JMP (abs)
+					addr = indirect(operand);
+					REG_PC = addr-1;
+					break;
+
+				}case 0x6D: case 0xED:{
+
+					// ADC/SBC abs
+					addr = operand;
+					add = load(addr);
+					// SBC (opcode bit 7 set) is ADC with the operand inverted:
+					add ^= -(opcode>>7)&0xFF;
+					temp = REG_ACC + add + F_CARRY;
+					F_OVERFLOW = ((REG_ACC^temp)&(add^temp)&0x80)>>7;
+					F_CARRY = temp>>8;
+					F_SIGN = (temp>>7)&1;
+					F_ZERO = temp&0xFF;
+					REG_ACC = temp&0xFF;
+					break;
+
+				}case 0x70:{
+
+					// BVS rel
+					if(F_OVERFLOW == 1){
+						addr = relative(operand,REG_PC);
+						cycleCount += branchCycles(opaddr,addr);
+						REG_PC = addr;
+					}
+					break;
+
+				}case 0x71:{
+
+					// ADC (zp),Y
+					addr = postIndexedIndirect(operand,REG_Y);
+					cycleCount += addr>>16;
+					addr &= 0xFFFF;
+					add = load(addr);
+					temp = REG_ACC + add + F_CARRY;
+					F_OVERFLOW = ((REG_ACC^temp)&(add^temp)&0x80)>>7;
+					F_CARRY = temp>>8;
+					F_SIGN = (temp>>7)&1;
+					F_ZERO = temp&0xFF;
+					REG_ACC = temp&0xFF;
+					break;
+
+				}case 0x75: case 0xF5:{
+
+					// ADC/SBC zp,X
+					addr = (operand+REG_X)&0xFF;
+					add = load(addr);
+					// SBC (opcode bit 7 set) is ADC with the operand inverted:
+					add ^= -(opcode>>7)&0xFF;
+					temp = REG_ACC + add + F_CARRY;
+					F_OVERFLOW = ((REG_ACC^temp)&(add^temp)&0x80)>>7;
+					F_CARRY = temp>>8;
+					F_SIGN = (temp>>7)&1;
+					F_ZERO = temp&0xFF;
+					REG_ACC = temp&0xFF;
+					break;
+
+				}case 0x78:{
+
+					// SEI
+					F_INTERRUPT = 1;
+					break;
+
+				}case 0x79: case 0xF9:{
+
+					// ADC/SBC abs,Y
+					addr = absIndexed(operand,REG_Y);
+					cycleCount += addr>>16;
+					addr &= 0xFFFF;
+					add = load(addr);
+					// SBC (opcode bit 7 set) is ADC with the operand inverted:
+					add ^= -(opcode>>7)&0xFF;
+					temp = REG_ACC + add + F_CARRY;
+					F_OVERFLOW = ((REG_ACC^temp)&(add^temp)&0x80)>>7;
+					F_CARRY = temp>>8;
+					F_SIGN = (temp>>7)&1;
+					F_ZERO = temp&0xFF;
+					REG_ACC = temp&0xFF;
+					break;
+
+				}case 0x7D: case 0xFD:{
+
+					// ADC/SBC abs,X
+					addr = absIndexed(operand,REG_X);
+					cycleCount += addr>>16;
+					addr &= 0xFFFF;
+					add = load(addr);
+					// SBC (opcode bit 7 set) is ADC with the operand inverted:
+					add ^= -(opcode>>7)&0xFF;
+					temp = REG_ACC + add + F_CARRY;
+					F_OVERFLOW = ((REG_ACC^temp)&(add^temp)&0x80)>>7;
+					F_CARRY = temp>>8;
+					F_SIGN = (temp>>7)&1;
+					F_ZERO = temp&0xFF;
+					REG_ACC = temp&0xFF;
+					break;
+
+				}case 0x81:{
+
+					// STA (zp,X)
+					addr = preIndexedIndirect(operand,REG_X)&0xFFFF;
+					write(addr,(short)REG_ACC);
+					break;
+
+				}case 0x84:{
+
+					// STY zp
+					addr = operand;
+					write(addr,(short)REG_Y);
+					break;
+
+				}case 0x85:{
+
+					// STA zp
+					addr = operand;
+					write(addr,(short)REG_ACC);
+					break;
+
+				}case 0x86:{
+
+					// STX zp
+					addr = operand;
+					write(addr,(short)REG_X);
+					break;
+
+				}case 0x88:{
+
+					// DEY
+					REG_Y = (REG_Y-1)&0xFF;
+					F_SIGN = (REG_Y>>7)&1;
+					F_ZERO = REG_Y;
+					break;
+
+				}case 0x8A:{
+
+					// TXA
+					REG_ACC = REG_X;
+					F_SIGN = (REG_X>>7)&1;
+					F_ZERO = REG_X;
+					break;
+
+				}case 0x8C:{
+
+					// STY abs
+					addr = operand;
+					write(addr,(short)REG_Y);
+					break;
+
+				}case 0x8D:{
+
+					// STA abs
+					addr = operand;
+					write(addr,(short)REG_ACC);
+					break;
+
+				}case 0x8E:{
+
+					// STX abs
+					addr = operand;
+					write(addr,(short)REG_X);
+					break;
+
+				}case 0x90:{
+
+					// BCC rel
+					if(F_CARRY == 0){
+						addr = relative(operand,REG_PC);
+						cycleCount += branchCycles(opaddr,addr);
+						REG_PC = addr;
+					}
+					break;
+
+				}case 0x91:{
+
+					// STA (zp),Y
+					addr = postIndexedIndirect(operand,REG_Y)&0xFFFF;
+					write(addr,(short)REG_ACC);
+					break;
+
+				}case 0x94:{
+
+					// STY zp,X
+					addr = (operand+REG_X)&0xFF;
+					write(addr,(short)REG_Y);
+					break;
+
+				}case 0x95:{
+
+					// STA zp,X
+					addr = (operand+REG_X)&0xFF;
+					write(addr,(short)REG_ACC);
+					break;
+
+				}case 0x96:{
+
+					// STX zp,Y
+					addr = (operand+REG_Y)&0xFF;
+					write(addr,(short)REG_X);
+					break;
+
+				}case 0x98:{
+
+					// TYA
+					REG_ACC = REG_Y;
+					F_SIGN = (REG_Y>>7)&1;
+					F_ZERO = REG_Y;
+					break;
+
+				}case 0x99:{
+
+					// STA abs,Y
+					addr = absIndexed(operand,REG_Y)&0xFFFF;
+					write(addr,(short)REG_ACC);
+					break;
+
+				}case 0x9A:{
+
+					// TXS
+					REG_SP = (REG_X+0x0100);
+					stackWrap();
+					break;
+
+				}case 0x9D:{
+
+					// STA abs,X
+					addr = absIndexed(operand,REG_X)&0xFFFF;
+					write(addr,(short)REG_ACC);
+					break;
+
+				}case 0xA0:{
+
+					// LDY #imm
+					REG_Y = operand;
+					F_SIGN = (REG_Y>>7)&1;
+					F_ZERO = REG_Y;
+					break;
+
+				}case 0xA1:{
+
+					// LDA (zp,X)
+					addr = preIndexedIndirect(operand,REG_X);
+					cycleCount += addr>>16;
+					addr &= 0xFFFF;
+					REG_ACC = load(addr);
+					F_SIGN = (REG_ACC>>7)&1;
+					F_ZERO = REG_ACC;
+					break;
+
+				}case 0xA2:{
+
+					// LDX #imm
+					REG_X = operand;
+					F_SIGN = (REG_X>>7)&1;
+					F_ZERO = REG_X;
+					break;
+
+				}case 0xA4:{
+
+					// LDY zp
+					addr = operand;
+					REG_Y = load(addr);
+					F_SIGN = (REG_Y>>7)&1;
+					F_ZERO = REG_Y;
+					break;
+
+				}case 0xA5:{
+
+					// LDA zp
+					addr = operand;
+					REG_ACC = load(addr);
+					F_SIGN = (REG_ACC>>7)&1;
+					F_ZERO = REG_ACC;
+					break;
+
+				}case 0xA6:{
+
+					// LDX zp
+					addr = operand;
+					REG_X = load(addr);
+					F_SIGN = (REG_X>>7)&1;
+					F_ZERO = REG_X;
+					break;
+
+				}case 0xA8:{
+
+					// TAY
+					REG_Y = REG_ACC;
+					F_SIGN = (REG_ACC>>7)&1;
+					F_ZERO = REG_ACC;
+					break;
+
+				}case 0xA9:{
+
+					// LDA #imm
+					REG_ACC = operand;
+					F_SIGN = (REG_ACC>>7)&1;
+					F_ZERO = REG_ACC;
+					break;
+
+				}case 0xAA:{
+
+					// TAX
+					REG_X = REG_ACC;
+					F_SIGN = (REG_ACC>>7)&1;
+					F_ZERO = REG_ACC;
+					break;
+
+				}case 0xAC:{
+
+					// LDY abs
+					addr = operand;
+					REG_Y = load(addr);
+					F_SIGN = (REG_Y>>7)&1;
+					F_ZERO = REG_Y;
+					break;
+
+				}case 0xAD:{
+
+					// LDA abs
+					addr = operand;
+					REG_ACC = load(addr);
+					F_SIGN = (REG_ACC>>7)&1;
+					F_ZERO = REG_ACC;
+					break;
+
+				}case 0xAE:{
+
+					// LDX abs
+					addr = operand;
+					REG_X = load(addr);
+					F_SIGN = (REG_X>>7)&1;
+					F_ZERO = REG_X;
+					break;
+
+				}case 0xB0:{
+
+					// BCS rel
+					if(F_CARRY == 1){
+						addr = relative(operand,REG_PC);
+						cycleCount += branchCycles(opaddr,addr);
+						REG_PC = addr;
+					}
+					break;
+
+				}case 0xB1:{
+
+					// LDA (zp),Y
+					addr = postIndexedIndirect(operand,REG_Y);
+					cycleCount += addr>>16;
+					addr &= 0xFFFF;
+					REG_ACC = load(addr);
+					F_SIGN = (REG_ACC>>7)&1;
+					F_ZERO = REG_ACC;
+					break;
+
+				}case 0xB4:{
+
+					// LDY zp,X
+					addr = (operand+REG_X)&0xFF;
+					REG_Y = load(addr);
+					F_SIGN = (REG_Y>>7)&1;
+					F_ZERO = REG_Y;
+					break;
+
+				}case 0xB5:{
+
+					// LDA zp,X
+					addr = (operand+REG_X)&0xFF;
+					REG_ACC = load(addr);
+					F_SIGN = (REG_ACC>>7)&1;
+					F_ZERO = REG_ACC;
+					break;
+
+				}case 0xB6:{
+
+					// LDX zp,Y
+					addr = (operand+REG_Y)&0xFF;
+					REG_X = load(addr);
+					F_SIGN = (REG_X>>7)&1;
+					F_ZERO = REG_X;
+					break;
+
+				}case 0xB8:{
+
+					// CLV
+					F_OVERFLOW = 0;
+					break;
+
+				}case 0xB9:{
+
+					// LDA abs,Y
+					addr = absIndexed(operand,REG_Y);
+					cycleCount += addr>>16;
+					addr &= 0xFFFF;
+					REG_ACC = load(addr);
+					F_SIGN = (REG_ACC>>7)&1;
+					F_ZERO = REG_ACC;
+					break;
+
+				}case 0xBA:{
+
+					// TSX
+					REG_X = (REG_SP-0x0100);
+					F_SIGN = (REG_SP>>7)&1;
+					F_ZERO = REG_X;
+					break;
+
+				}case 0xBC:{
+
+					// LDY abs,X
+					addr = absIndexed(operand,REG_X);
+					cycleCount += addr>>16;
+					addr &= 0xFFFF;
+					REG_Y = load(addr);
+					F_SIGN = (REG_Y>>7)&1;
+					F_ZERO = REG_Y;
+					break;
+
+				}case 0xBD:{
+
+					// LDA abs,X
+					addr = absIndexed(operand,REG_X);
+					cycleCount += addr>>16;
+					addr &= 0xFFFF;
+					REG_ACC = load(addr);
+					F_SIGN = (REG_ACC>>7)&1;
+					F_ZERO = REG_ACC;
+					break;
+
+				}case 0xBE:{
+
+					// LDX abs,Y
+					addr = absIndexed(operand,REG_Y);
+					cycleCount += addr>>16;
+					addr &= 0xFFFF;
+					REG_X = load(addr);
+					F_SIGN = (REG_X>>7)&1;
+					F_ZERO = REG_X;
+					break;
+
+				}case 0xC0:{
+
+					// CPY #imm
+					temp = REG_Y - operand;
+					F_CARRY = ~temp>>>31;
+					F_SIGN = (temp>>7)&1;
+					F_ZERO = temp&0xFF;
+					break;
+
+				}case 0xC1:{
+
+					// CMP (zp,X)
+					addr = preIndexedIndirect(operand,REG_X);
+					cycleCount += addr>>16;
+					addr &= 0xFFFF;
+					temp = REG_ACC - load(addr);
+					F_CARRY = ~temp>>>31;
+					F_SIGN = (temp>>7)&1;
+					F_ZERO = temp&0xFF;
+					break;
+
+				}case 0xC4:{
+
+					// CPY zp
+					addr = operand;
+					temp = REG_Y - load(addr);
+					F_CARRY = ~temp>>>31;
+					F_SIGN = (temp>>7)&1;
+					F_ZERO = temp&0xFF;
+					break;
+
+				}case 0xC5:{
+
+					// CMP zp
+					addr = operand;
+					temp = REG_ACC - load(addr);
+					F_CARRY = ~temp>>>31;
+					F_SIGN = (temp>>7)&1;
+					F_ZERO = temp&0xFF;
+					break;
+
+				}case 0xC6: case 0xCE: case 0xD6: case 0xDE:{
+
+					// DEC zp/abs/zp,X/abs,X
+					addr = rmwAddress(opcode,operand,REG_X);
+					temp = (load(addr)-1)&0xFF;
+					F_SIGN = (temp>>7)&1;
+					F_ZERO = temp;
+					write(addr,(short)temp);
+					break;
+
+				}case 0xC8:{
+
+					// INY
+					REG_Y = (REG_Y+1)&0xFF;
+					F_SIGN = (REG_Y>>7)&1;
+					F_ZERO = REG_Y;
+					break;
+
+				}case 0xC9:{
+
+					// CMP #imm
+					temp = REG_ACC - operand;
+					F_CARRY = ~temp>>>31;
+					F_SIGN = (temp>>7)&1;
+					F_ZERO = temp&0xFF;
+					break;
+
+				}case 0xCA:{
+
+					// DEX
+					REG_X = (REG_X-1)&0xFF;
+					F_SIGN = (REG_X>>7)&1;
+					F_ZERO = REG_X;
+					break;
+
+				}case 0xCC:{
+
+					// CPY abs
+					addr = operand;
+					temp = REG_Y - load(addr);
+					F_CARRY = ~temp>>>31;
+					F_SIGN = (temp>>7)&1;
+					F_ZERO = temp&0xFF;
+					break;
+
+				}case 0xCD:{
+
+					// CMP abs
+					addr = operand;
+					temp = REG_ACC - load(addr);
+					F_CARRY = ~temp>>>31;
+					F_SIGN = (temp>>7)&1;
+					F_ZERO = temp&0xFF;
+					break;
+
+				}case 0xD0:{
+
+					// BNE rel
+					if(F_ZERO != 0){
+						addr = relative(operand,REG_PC);
+						cycleCount += branchCycles(opaddr,addr);
+						REG_PC = addr;
+					}
+					break;
+
+				}case 0xD1:{
 
-		// Get Memory Mapper:
-		this.mmap = nes.getMemoryMapper();
+					// CMP (zp),Y
+					addr = postIndexedIndirect(operand,REG_Y);
+					cycleCount += addr>>16;
+					addr &= 0xFFFF;
+					temp = REG_ACC - load(addr);
+					F_CARRY = ~temp>>>31;
+					F_SIGN = (temp>>7)&1;
+					F_ZERO = temp&0xFF;
+					break;
 
-		// Reset crash flag:
-		crash = false;
+				}case 0xD5:{
 
-		// Set flags:
-		F_BRK_NEW = 1;
-		F_NOTUSED_NEW = 1;
-		F_INTERRUPT_NEW = 1;
-		irqRequested = false;
+					// CMP zp,X
+					addr = (operand+REG_X)&0xFF;
+					temp = REG_ACC - load(addr);
+					F_CARRY = ~temp>>>31;
+					F_SIGN = (temp>>7)&1;
+					F_ZERO = temp&0xFF;
+					break;
 
-	}
+				}case 0xD8:{
 
-	public void stateLoad(ByteBuffer buf){
+					// CLD
+					F_DECIMAL = 0;
+					break;
 
-		if(buf.readByte()==1){
-			// Version 1
+				}case 0xD9:{
 
-			// Registers:
-			setStatus(buf.readInt());
-			REG_ACC_NEW = buf.readInt();
-			REG_PC_NEW  = buf.readInt();
-			REG_SP      = buf.readInt();
-			REG_X_NEW   = buf.readInt();
-			REG_Y_NEW   = buf.readInt();
+					// CMP abs,Y
+					addr = absIndexed(operand,REG_Y);
+					cycleCount += addr>>16;
+					addr &= 0xFFFF;
+					temp = REG_ACC - load(addr);
+					F_CARRY = ~temp>>>31;
+					F_SIGN = (temp>>7)&1;
+					F_ZERO = temp&0xFF;
+					break;
 
-			// Cycles to halt:
-			cyclesToHalt = buf.readInt();
+				}case 0xDD:{
 
-		}
+					// CMP abs,X
+					addr = absIndexed(operand,REG_X);
+					cycleCount += addr>>16;
+					addr &= 0xFFFF;
+					temp = REG_ACC - load(addr);
+					F_CARRY = ~temp>>>31;
+					F_SIGN = (temp>>7)&1;
+					F_ZERO = temp&0xFF;
+					break;
 
-	}
+				}case 0xE0:{
 
-	public void stateSave(ByteBuffer buf){
+					// CPX #imm
+					temp = REG_X - operand;
+					F_CARRY = ~temp>>>31;
+					F_SIGN = (temp>>7)&1;
+					F_ZERO = temp&0xFF;
+					break;
 
-		// Save info version:
-		buf.putByte((short)1);
+				}case 0xE4:{
 
-		// Save registers:
-		buf.putInt(getStatus());
-		buf.putInt(REG_ACC_NEW);
-		buf.putInt(REG_PC_NEW );
-		buf.putInt(REG_SP     );
-		buf.putInt(REG_X_NEW  );
-		buf.putInt(REG_Y_NEW  );
+					// CPX zp
+					addr = operand;
+					temp = REG_X - load(addr);
+					F_CARRY = ~temp>>>31;
+					F_SIGN = (temp>>7)&1;
+					F_ZERO = temp&0xFF;
+					break;
 
-		// Cycles to halt:
-		buf.putInt(cyclesToHalt);
+				}case 0xE6: case 0xEE: case 0xF6: case 0xFE:{
 
-	}
+					// INC zp/abs/zp,X/abs,X
+					addr = rmwAddress(opcode,operand,REG_X);
+					temp = (load(addr)+1)&0xFF;
+					F_SIGN = (temp>>7)&1;
+					F_ZERO = temp;
+					write(addr,(short)temp);
+					break;
 
-	public void reset(){
+				}case 0xE8:{
 
-		REG_ACC_NEW = 0;
-		REG_X_NEW = 0;
-		REG_Y_NEW = 0;
+					// INX
+					REG_X = (REG_X+1)&0xFF;
+					F_SIGN = (REG_X>>7)&1;
+					F_ZERO = REG_X;
+					break;
 
-		irqRequested = false;
-		irqType = 0;
+				}case 0xEA:{
 
-		// Reset Stack pointer:
-		REG_SP = 0x01FF;
+					// NOP
+					break;
 
-		// Reset Program counter:
-		REG_PC_NEW = 0x8000-1;
+				}case 0xEC:{
 
-		// Reset Status register:
-		REG_STATUS_NEW = 0x28;
-		setStatus(0x28);
+					// CPX abs
+					addr = operand;
+					temp = REG_X - load(addr);
+					F_CARRY = ~temp>>>31;
+					F_SIGN = (temp>>7)&1;
+					F_ZERO = temp&0xFF;
+					break;
 
-		// Reset crash flag:
-		crash = false;
+				}case 0xF0:{
 
-		// Set flags:
-		F_CARRY_NEW = 0;
-		F_DECIMAL_NEW = 0;
-		F_INTERRUPT_NEW = 1;
-		F_OVERFLOW_NEW = 0;
-		F_SIGN_NEW = 0;
-		F_ZERO_NEW = 0;
+					// BEQ rel
+					if(F_ZERO == 0){
+						addr = relative(operand,REG_PC);
+						cycleCount += branchCycles(opaddr,addr);
+						REG_PC = addr;
+					}
+					break;
 
-		F_NOTUSED_NEW = 1;
-		F_BRK_NEW = 1;
+				}case 0xF1:{
 
-		cyclesToHalt = 0;
+					// SBC (zp),Y
+					addr = postIndexedIndirect(operand,REG_Y)&0xFFFF;
+					add = load(addr);
+					add ^= 0xFF;
+					temp = REG_ACC + add + F_CARRY;
+					F_OVERFLOW = ((REG_ACC^temp)&(add^temp)&0x80)>>7;
+					F_CARRY = temp>>8;
+					F_SIGN = (temp>>7)&1;
+					F_ZERO = temp&0xFF;
+					REG_ACC = temp&0xFF;
+					break;
 
+				}case 0xF8:{
 
-	}
+					// SED
+					F_DECIMAL = 1;
+					break;
 
-	public synchronized void beginExecution(){
+				}default:{
 
-		if(myThread!=null && myThread.isAlive()){
-			endExecution();
-		}
+					// Illegal opcode!
+					illegalOpcode(opaddr);
+					break;
 
-		myThread = new Thread(this);
-		myThread.start();
-		myThread.setPriority(Thread.MIN_PRIORITY);
+				}
+			}// end of switch
 
-	}
+		} // End of run loop.
 
-	public synchronized void endExecution(){
-		//System.out.println("* Attempting to stop CPU thread.");
-		if(myThread!=null && myThread.isAlive()){
-			try{
-				stopRunning = true;
-				myThread.join();
+		// Leave the PPU and APU up to date:
+		sched.cancel(Scheduler.STEP);
+		syncUnits();
 
-			}catch(InterruptedException ie){
-				//System.out.println("** Unable to stop CPU thread!");
-				ie.printStackTrace();
-			}
-		}else{
-			//System.out.println("* CPU Thread was not alive.");
-		}
-	}
+		cyclesRun = (int)(sched.clock-start);
 
-	public boolean isRunning(){
-		return (myThread!=null && myThread.isAlive());
-	}
+		// Save registers:
+		REG_ACC_NEW 	= REG_ACC;
+		REG_X_NEW 	= REG_X;
+		REG_Y_NEW 	= REG_Y;
+		REG_STATUS_NEW 	= REG_STATUS;
+		REG_PC_NEW 	= REG_PC;
 
-	public void run(){
-		initRun();
-		emulate();
-	}
+		// Save Status flags:
+		F_CARRY_NEW 	= F_CARRY;
+		F_ZERO_NEW 	= (F_ZERO==0?1:0);
+		F_INTERRUPT_NEW = F_INTERRUPT;
+		F_DECIMAL_NEW 	= F_DECIMAL;
+		F_BRK_NEW 	= F_BRK;
+		F_NOTUSED_NEW   = F_NOTUSED;
+		F_OVERFLOW_NEW 	= F_OVERFLOW;
+		F_SIGN_NEW 	= F_SIGN;
 
-	public synchronized void initRun(){
-		stopRunning = false;
 	}
 
-	// Emulates cpu instructions until stopped.
-	public void emulate(){
+	// Reference interpreter. It decodes the address mode and the
+	// instruction separately, using the tables in CpuInfo.
+	private void emulateReference(){
 
 
 		// NES Memory
@@ -222,8 +1913,6 @@ public final class CPU implements Runnable{
 
 		// References to other parts of NES:
 		MemoryMapper mmap = nes.memMapper;
-		PPU 		 ppu  = nes.ppu;
-		PAPU 		 papu = nes.papu;
 
 
 		// Registers:
@@ -255,9 +1944,11 @@ public final class CPU implements Runnable{
 		int temp;
 		int add;
 
-		boolean palEmu = Globals.palEmulation;
-		boolean emulateSound = Globals.enableSound;
-		boolean asApplet = Globals.appletMode;
+		boolean palEmu = nes.palEmulation;
+		boolean asApplet = nes.appletMode;
+		Scheduler sched = nes.scheduler;
+		int budget = cycleBudget;
+		boolean budgeted = budget>0;
 		stopRunning = false;
 
 		while(true){
@@ -1071,7 +2762,7 @@ public final class CPU implements Runnable{
 					
 					temp = pull();
 					F_CARRY     = (temp   )&1;
-					F_ZERO      = ((temp>>1)&1)==0?1:0;
+					F_ZERO      = ~temp&2;
 					F_INTERRUPT = (temp>>2)&1;
 					F_DECIMAL   = (temp>>3)&1;
 					F_BRK       = (temp>>4)&1;
@@ -1278,17 +2969,32 @@ public final class CPU implements Runnable{
 				}
 			}
 
-			if(asApplet){			
-				ppu.cycles = cycleCount*3;
-				ppu.emulateCycles();			
+			// DMA and DMC stalls:
+			if(cyclesToHalt>0){
+				cycleCount += cyclesToHalt;
+				cyclesToHalt = 0;
 			}
-			
-			if(emulateSound){
-				papu.clockFrameCounter(cycleCount);
+
+			// Run the other units after every instruction:
+			sched.clock += cycleCount;
+			if(asApplet){
+				ppu.catchUp();
+			}
+			papu.runEvents();
+			if(sched.isDue(Scheduler.MAPPER)){
+				sched.cancel(Scheduler.MAPPER);
+				mmap.timerEvent();
+			}
+
+			if(budgeted){
+				budget -= cycleCount;
+				if(budget<=0)break;
 			}
 			
 		} // End of run loop.
 
+		cyclesRun = cycleBudget-budget;
+
 		// Save registers:
 		REG_ACC_NEW 	= REG_ACC;
 		REG_X_NEW 	= REG_X;
@@ -1308,24 +3014,254 @@ public final class CPU implements Runnable{
 
 	}
 
+	// RAM is never remapped, so it's checked first. Other memory
+	// goes straight to the page's array if it has one, and only
+	// I/O pages are left to the mapper. These are kept small so
+	// that the JIT inlines them everywhere.
 	private int load(int addr){
-		return addr<0x2000 ? mem[addr&0x7FF] : mmap.load(addr);
+		return addr<0x2000 ? mem[addr&0x7FF] : loadPage(addr);
+	}
+
+	private int loadPage(int addr){
+		int page = (addr>>8)&0xFF;
+		short[] data = readPage[page];
+		return data!=null ? data[readOffset[page]+(addr&0xFF)] : loadIO(addr);
+	}
+
+	// I/O registers and mapper registers may look at the PPU and
+	// APU, so they catch up first. Afterwards they look for their
+	// next events again, as the access may have moved them.
+	int loadIO(int addr){
+		syncUnits();
+		int value = mmap.load(addr);
+		syncUnits();
+		return value;
+	}
+
+	// Runs the PPU and APU up to the current time.
+	private void syncUnits(){
+		if(nes.appletMode){
+			ppu.catchUp();
+		}
+		papu.catchUp();
+	}
+
+	// An idle loop only reads memory, without side effects, so
+	// each pass runs the same way until an event changes what it
+	// reads or raises an interrupt. For such a loop, from target
+	// back to the branch or jump at jumpAddr, returns the cycles
+	// of the whole passes that end before the next event. The
+	// units catch up lazily, so only the clock has to be moved on.
+	// Passes are only skipped once one has run from start to end
+	// with no event or interrupt. Returns 0 for other loops.
+	private long idleLoopSkip(Scheduler sched, int target, int jumpAddr){
+
+		long pass = sched.clock-idleClock;
+		boolean repeated = jumpAddr==idleJumpAddr && eventClock<=idleClock;
+		idleJumpAddr = jumpAddr;
+		idleClock = sched.clock;
+
+		if(!repeated || irqRequested || cyclesToHalt>0 || papu.isDmcFetching()){
+			return 0;
+		}
+		if(jumpAddr-target>IDLE_LOOP_SIZE || !isPlainMemory(target) || !isPlainMemory(jumpAddr+2)){
+			return 0;
+		}
+		if(pass!=passCycles(target,jumpAddr)){
+			return 0;
+		}
+
+		long time = Math.min(sched.next,sched.clock+IDLE_SKIP_MAX)-1-sched.clock;
+		if(time<=0){
+			return 0;
+		}
+		time -= time%pass;
+		idleClock += time;
+		return time;
+
+	}
+
+	// Returns the cycles of one pass of a loop, or 0 if it has an
+	// instruction that isn't allowed in an idle loop.
+	private int passCycles(int target, int jumpAddr){
+
+		int opcode = load(jumpAddr);
+		int cycles = opdata[opcode]>>24;
+		if(opcode!=0x4C){
+			cycles += branchCycles(jumpAddr-1,target-1);
+		}
+
+		int addr = target;
+		while(addr<jumpAddr){
+			opcode = load(addr);
+			switch(opcode){
+				case 0xEA:
+				case 0x09: case 0x29: case 0xA0: case 0xA2: case 0xA9: case 0xC0: case 0xC9: case 0xE0:
+				case 0x05: case 0x24: case 0x25: case 0xA4: case 0xA5: case 0xA6: case 0xC4: case 0xC5: case 0xE4:{
+					// NOP, and ORA, BIT, AND, LDY, LDX, LDA, CPY, CMP, CPX #imm/zp:
+					break;
+				}
+				case 0x0D: case 0x2C: case 0x2D: case 0xAC: case 0xAD: case 0xAE: case 0xCC: case 0xCD: case 0xEC:{
+					// The same, abs. Reading PPU status has no side
+					// effects the second time:
+					int operand = load16bit(addr+1);
+					if(!isPlainMemory(operand) && (operand<0x2000 || operand>=0x4000 || (operand&7)!=2)){
+						return 0;
+					}
+					break;
+				}
+				default:{
+					return 0;
+				}
+			}
+			int opinf = opdata[opcode];
+			cycles += opinf>>24;
+			addr += (opinf>>16)&0xFF;
+		}
+		return addr==jumpAddr ? cycles : 0;
+
+	}
+
+	// RAM, or a page that's read straight from its array.
+	private boolean isPlainMemory(int addr){
+		return addr<0x2000 || readPage[(addr>>8)&0xFF]!=null;
+	}
+
+	// Runs the units whose deadlines have been reached.
+	private void runEvents(Scheduler sched, boolean asApplet){
+		eventClock = sched.clock;
+		if(sched.isDue(Scheduler.PPU)){
+			if(asApplet){
+				ppu.catchUp();
+			}else{
+				sched.cancel(Scheduler.PPU);
+			}
+		}
+		if(sched.isDue(Scheduler.APU)){
+			papu.runEvents();
+		}
+		if(sched.isDue(Scheduler.MAPPER)){
+			sched.cancel(Scheduler.MAPPER);
+			mmap.timerEvent();
+		}
 	}
 	
 	private int load16bit(int addr){
 		return addr<0x1FFF ?
 			mem[addr&0x7FF] | (mem[(addr+1)&0x7FF]<<8)
 			:
-			mmap.load(addr) | (mmap.load(addr+1)<<8)
+			loadPage(addr) | (load(addr+1)<<8)
 			;
 	}
 	
-	private void write(int addr, short val){
+	void write(int addr, short val){
 		if(addr < 0x2000){
 			mem[addr&0x7FF] = val;
 		}else{
+			writePage(addr,val);
+		}
+	}
+
+	private void writePage(int addr, short val){
+		int page = (addr>>8)&0xFF;
+		short[] data = writePage[page];
+		if(data!=null){
+			data[writeOffset[page]+(addr&0xFF)] = val;
+		}else{
+			syncUnits();
 			mmap.write(addr,val);
+			syncUnits();
+		}
+	}
+
+	// Addressing helpers for the flat interpreter, which pass in the
+	// instruction's operand. The indexed modes return the page
+	// crossing cycle in bit 16 of the address.
+	private int absIndexed(int addr, int reg){
+		return ((addr+reg)&0xFFFF) | ((((addr&0xFF)+reg)>>8)<<16);
+	}
+
+	private int preIndexedIndirect(int operand, int x){
+		int addr = operand+x;
+		return load16bit(addr&0xFF) | ((addr>>8)<<16);
+	}
+
+	private int postIndexedIndirect(int operand, int y){
+		int addr = load16bit(operand);
+		return ((addr+y)&0xFFFF) | ((((addr&0xFF)+y)>>8)<<16);
+	}
+
+	int indirect(int addr){
+		if(addr < 0x1FFF){
+			addr = mem[addr] + (mem[(addr&0xFF00)|(((addr&0xFF)+1)&0xFF)]<<8);
+		}else{
+			addr = mmap.load(addr)+(mmap.load((addr&0xFF00)|(((addr&0xFF)+1)&0xFF))<<8);
+		}
+		return addr&0xFFFF;
+	}
+
+	// The read-modify-write instructions only use zp, abs, zp,X and
+	// abs,X, selected by bits 3-4 of the opcode.
+	private int rmwAddress(int opcode, int operand, int x){
+		switch(opcode&0x18){
+			case 0x00: case 0x08: return operand;
+			case 0x10: return (operand+x)&0xFF;
+			default: return (operand+x)&0xFFFF;
+		}
+	}
+
+	private int relative(int offset, int pc){
+		return (offset<0x80 ? pc+offset : pc+offset-256)&0xFFFF;
+	}
+
+	// Decodes the instruction at index i of a ROM page's array, at
+	// the given address, for the page's cache. The operand is kept
+	// in bits 8-23. An instruction that runs on into the next page
+	// is left undecoded, as that page may be switched on its own.
+	private int decode(short[] data, int i, int addr){
+		int opcode = data[i];
+		int size = (opdata[opcode]>>16)&0xFF;
+		if((addr&0xFF)+size>0x100){
+			return UNDECODED;
+		}
+		int operand = 0;
+		if(size>1){
+			operand = data[i+1];
+		}
+		if(size>2){
+			operand |= data[i+2]<<8;
 		}
+		return DECODED|(fuse(data,i,addr)<<FUSED_SHIFT)|(operand<<8)|opcode;
+	}
+
+	// Returns the kind of the longest fused sequence starting with
+	// the instruction at data[i], or 0. The whole sequence must be
+	// in the same page as the instruction.
+	private int fuse(short[] data, int i, int addr){
+		int kind = 0;
+		for(int k=1;k<FUSED.length;k++){
+			int[] seq = FUSED[k];
+			int at = addr&0xFF;
+			int n = 0;
+			while(n<seq.length && at<0x100 && data[i+at-(addr&0xFF)]==seq[n]){
+				at += (opdata[seq[n]]>>16)&0xFF;
+				n++;
+			}
+			if(n==seq.length && at<=0x100 && (kind==0 || seq.length>FUSED[kind].length)){
+				kind = k;
+			}
+		}
+		return kind;
+	}
+
+	private static int branchCycles(int opaddr, int addr){
+		return (opaddr&0xFF00)!=(addr&0xFF00) ? 2 : 1;
+	}
+
+	// Note that z is the inverted zero flag kept by emulate(), which
+	// is never negative, so z-1 is negative only when it is 0.
+	static int packStatus(int c, int z, int i, int d, int b, int u, int v, int n){
+		return c|(((z-1)>>>31)<<1)|(i<<2)|(d<<3)|(b<<4)|(u<<5)|(v<<6)|(n<<7);
 	}
 
 	public void requestIrq(int type){
@@ -1340,7 +3276,7 @@ public final class CPU implements Runnable{
 	}
 
 	public void push(int value){
-		mmap.write(REG_SP,(short)value);
+		write(REG_SP,(short)value);
 		REG_SP--;
 		REG_SP = 0x0100 | (REG_SP&0xFF);
 	}
@@ -1352,7 +3288,7 @@ public final class CPU implements Runnable{
 	public short pull(){
 		REG_SP++;
 		REG_SP = 0x0100 | (REG_SP&0xFF);
-		return mmap.load(REG_SP);
+		return (short)load(REG_SP);
 	}
 
 	public boolean pageCrossed(int addr1, int addr2){
@@ -1418,12 +3354,60 @@ public final class CPU implements Runnable{
 		F_SIGN_NEW      = (st>>7)&1;
 	}
 
+	private void illegalOpcode(int opaddr){
+		if(!crash){
+			crash = true;
+			stopRunning = true;
+			nes.gui.showErrorMsg("Game crashed, invalid opcode at address $"+Misc.hex16(opaddr));
+		}
+	}
+
 	public void setCrashed(boolean value){
 		this.crash = value;
 	}
 
+	// Selects the reference interpreter, e.g. to check the
+	// fast one against it. Takes effect when emulate() is next called.
+	public void setReferenceInterpreter(boolean value){
+		referenceInterpreter = value;
+	}
+
+	// Enables skipping idle loops. Emulation, sound included, is the
+	// same either way; MacroBenchmark -verify checks it.
+	public void setIdleLoopSkipping(boolean value){
+		idleLoopSkipping = value;
+	}
+
+	// Enables running fused sequences of instructions as one.
+	// Emulation is the same either way; MacroBenchmark -verify checks it.
+	public void setFusing(boolean value){
+		fusing = value;
+	}
+
+	// Enables compiling hot code to bytecode (see Recompiler).
+	// Emulation is the same either way.
+	public void setRecompiling(boolean value){
+		recompiler = value && mmap!=null ? new Recompiler(this,nes) : null;
+	}
+
+	public boolean isRecompiling(){
+		return recompiler!=null;
+	}
+
 	public void setMapper(MemoryMapper mapper){
 		mmap = mapper;
+		if(mapper != null){
+			pages = mapper.getPageTable();
+			readPage = pages.readPage;
+			readOffset = pages.readOffset;
+			codePage = pages.codePage;
+			romBank = pages.romBank;
+			writePage = pages.writePage;
+			writeOffset = pages.writeOffset;
+			if(recompiler!=null){
+				recompiler = new Recompiler(this,nes);
+			}
+		}
 	}
 
 	public void destroy(){
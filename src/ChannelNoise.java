@@ -39,6 +39,62 @@ public class ChannelNoise implements PapuChannel {
     public long accCount = 1;
     public int tmp;
 
+    // Shift register sequences, for stepping it many times at
+    // once. For each mode, all 2^15 states are listed cycle by
+    // cycle in seq. pos gives the place of a state in seq, cycle
+    // the number of its cycle, and ones the number of steps with
+    // a 1 output from the start of the cycle up to it. The start
+    // and length of each cycle are in cycleBase and cycleLength.
+    // These are shared by all instances, and never change.
+    private static final char[][] seq = new char[2][0x8000];
+    private static final char[][] pos = new char[2][0x8000];
+    private static final char[][] cycle = new char[2][0x8000];
+    private static final char[][] ones = new char[2][0x8000];
+    private static final int[][] cycleBase = new int[2][];
+    private static final int[][] cycleLength = new int[2][];
+
+    static {
+
+        int[] starts = new int[0x8000];
+        for (int mode = 0; mode < 2; mode++) {
+
+            boolean[] listed = new boolean[0x8000];
+            int p = 0;
+            int c = 0;
+            for (int start = 0; start < 0x8000; start++) {
+
+                if (listed[start]) {
+                    continue;
+                }
+
+                starts[c] = p;
+                int n = 0;
+                int state = start;
+                do {
+                    listed[state] = true;
+                    seq[mode][p] = (char) state;
+                    pos[mode][state] = (char) p;
+                    cycle[mode][p] = (char) c;
+                    ones[mode][p] = (char) n;
+                    n += outputBit(state, mode);
+                    state = nextState(state, mode);
+                    p++;
+                } while (state != start);
+                c++;
+
+            }
+
+            cycleBase[mode] = new int[c];
+            cycleLength[mode] = new int[c];
+            for (int i = 0; i < c; i++) {
+                cycleBase[mode][i] = starts[i];
+                cycleLength[mode][i] = (i + 1 < c ? starts[i + 1] : 0x8000) - starts[i];
+            }
+
+        }
+
+    }
+
     public ChannelNoise(PAPU papu) {
         this.papu = papu;
         shiftReg = 1 << 14;
@@ -79,6 +135,43 @@ public class ChannelNoise implements PapuChannel {
 
     }
 
+    // Output of the step from the given shift register state.
+    static int outputBit(int state, int mode) {
+        state <<= 1;
+        return (((state << (mode == 0 ? 1 : 6)) ^ state) & 0x8000) == 0 ? 1 : 0;
+    }
+
+    static int nextState(int state, int mode) {
+        return ((state << 1) | (1 - outputBit(state, mode))) & 0x7FFF;
+    }
+
+    // Steps the shift register as many times as given, and
+    // returns the number of steps with a 1 output. randomBit
+    // is set to the output of the last step.
+    public int stepShiftReg(int n) {
+
+        char[] s = seq[randomMode];
+        char[] o = ones[randomMode];
+        int p = pos[randomMode][shiftReg & 0x7FFF];
+        int c = cycle[randomMode][p];
+        int b = cycleBase[randomMode][c];
+        int len = cycleLength[randomMode][c];
+
+        int r = p - b + n;
+        int last = b + (r - 1) % len;
+        int end = b + r % len;
+
+        int count = o[end] - o[p];
+        if (r >= len) {
+            count += (r / len) * (o[b + len - 1] + outputBit(s[b + len - 1], randomMode));
+        }
+
+        randomBit = outputBit(s[last], randomMode);
+        shiftReg = s[end];
+        return count;
+
+    }
+
     public void updateSampleValue() {
         if (isEnabled && lengthCounter > 0) {
             sampleValue = randomBit * masterVolume;
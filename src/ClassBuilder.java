@@ -0,0 +1,330 @@
+/*
+vNES
+Copyright © 2006-2013 Open Emulation Project
+
+This program is free software: you can redistribute it and/or modify it under
+the terms of the GNU General Public License as published by the Free Software
+Foundation, either version 3 of the License, or (at your option) any later
+version.
+
+This program is distributed in the hope that it will be useful, but WITHOUT ANY
+WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS FOR A
+PARTICULAR PURPOSE.  See the GNU General Public License for more details.
+
+You should have received a copy of the GNU General Public License along with
+this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+import java.util.ArrayList;
+import java.util.HashMap;
+
+// Writes class files for the Recompiler: a public class with a
+// default constructor and methods of plain bytecode. Only what the
+// recompiler needs is supported. The files are version 49, which
+// the JVM verifies by type inference, so no stack map frames have
+// to be worked out.
+public class ClassBuilder {
+
+    // Opcodes:
+    public static final int ICONST_0 = 0x03;
+    public static final int BIPUSH = 0x10;
+    public static final int SIPUSH = 0x11;
+    public static final int LDC_W = 0x13;
+    public static final int ILOAD = 0x15;
+    public static final int ALOAD = 0x19;
+    public static final int SALOAD = 0x35;
+    public static final int ISTORE = 0x36;
+    public static final int ASTORE = 0x3A;
+    public static final int SASTORE = 0x56;
+    public static final int IADD = 0x60;
+    public static final int ISUB = 0x64;
+    public static final int ISHL = 0x78;
+    public static final int ISHR = 0x7A;
+    public static final int IUSHR = 0x7C;
+    public static final int IAND = 0x7E;
+    public static final int IOR = 0x80;
+    public static final int IXOR = 0x82;
+    public static final int IFEQ = 0x99;
+    public static final int IFNE = 0x9A;
+    public static final int IF_ICMPNE = 0xA0;
+    public static final int GOTO = 0xA7;
+    public static final int IRETURN = 0xAC;
+    public static final int RETURN = 0xB1;
+    public static final int GETFIELD = 0xB4;
+    public static final int PUTFIELD = 0xB5;
+    public static final int INVOKEVIRTUAL = 0xB6;
+    public static final int INVOKESPECIAL = 0xB7;
+    public static final int INVOKESTATIC = 0xB8;
+
+    private static final int ACC_PUBLIC = 0x0001;
+    private static final int ACC_FINAL = 0x0010;
+    private static final int ACC_SUPER = 0x0020;
+
+    // Constant pool, with the index of each entry by its contents:
+    private ByteArray pool = new ByteArray();
+    private HashMap<String, Integer> poolIndex = new HashMap<String, Integer>();
+    private int poolCount = 1;
+
+    private int thisClass;
+    private int superClass;
+    private int codeName;
+    private ArrayList<Code> methods = new ArrayList<Code>();
+
+    public ClassBuilder(String name, String superName) {
+
+        thisClass = classRef(name);
+        superClass = classRef(superName);
+        codeName = utf8("Code");
+
+        // Default constructor:
+        Code init = method("<init>", "()V", 1, 1);
+        init.load(ALOAD, 0);
+        init.invoke(INVOKESPECIAL, superName, "<init>", "()V");
+        init.op(RETURN);
+
+    }
+
+    // Adds a public method. Its code is added to the returned object.
+    public Code method(String name, String desc, int maxStack, int maxLocals) {
+
+        Code code = new Code(utf8(name), utf8(desc), maxStack, maxLocals);
+        methods.add(code);
+        return code;
+
+    }
+
+    public byte[] toByteArray() {
+
+        ByteArray out = new ByteArray();
+        out.u4(0xCAFEBABE);
+        out.u2(0);
+        out.u2(49);
+        out.u2(poolCount);
+        out.bytes(pool);
+        out.u2(ACC_PUBLIC | ACC_FINAL | ACC_SUPER);
+        out.u2(thisClass);
+        out.u2(superClass);
+        out.u2(0); // interfaces
+        out.u2(0); // fields
+
+        out.u2(methods.size());
+        for (int i = 0; i < methods.size(); i++) {
+            Code m = methods.get(i);
+            m.patch();
+            out.u2(ACC_PUBLIC);
+            out.u2(m.name);
+            out.u2(m.desc);
+            out.u2(1);
+            out.u2(codeName);
+            out.u4(12 + m.code.length);
+            out.u2(m.maxStack);
+            out.u2(m.maxLocals);
+            out.u4(m.code.length);
+            out.bytes(m.code);
+            out.u2(0); // exception table
+            out.u2(0); // attributes
+        }
+        out.u2(0); // attributes
+        return out.toArray();
+
+    }
+
+    // Constant pool entries:
+
+    private int entry(String key) {
+        Integer index = poolIndex.get(key);
+        return index != null ? index : 0;
+    }
+
+    private int add(String key) {
+        poolIndex.put(key, poolCount);
+        return poolCount++;
+    }
+
+    private int utf8(String s) {
+        int index = entry("U" + s);
+        if (index == 0) {
+            // The names used are all ASCII:
+            pool.u1(1);
+            pool.u2(s.length());
+            for (int i = 0; i < s.length(); i++) {
+                pool.u1(s.charAt(i));
+            }
+            index = add("U" + s);
+        }
+        return index;
+    }
+
+    private int classRef(String name) {
+        int index = entry("C" + name);
+        if (index == 0) {
+            int n = utf8(name);
+            pool.u1(7);
+            pool.u2(n);
+            index = add("C" + name);
+        }
+        return index;
+    }
+
+    private int integer(int value) {
+        int index = entry("I" + value);
+        if (index == 0) {
+            pool.u1(3);
+            pool.u4(value);
+            index = add("I" + value);
+        }
+        return index;
+    }
+
+    // Field (tag 9) or method (tag 10) reference:
+    private int memberRef(int tag, String owner, String name, String desc) {
+        String key = tag + owner + "." + name + ":" + desc;
+        int index = entry(key);
+        if (index == 0) {
+            int c = classRef(owner);
+            int n = utf8(name);
+            int d = utf8(desc);
+            pool.u1(12);
+            pool.u2(n);
+            pool.u2(d);
+            int nameAndType = poolCount++;
+            pool.u1(tag);
+            pool.u2(c);
+            pool.u2(nameAndType);
+            index = add(key);
+        }
+        return index;
+    }
+
+    // A position in a method's code that jumps can go to.
+    public static class Label {
+
+        int pos = -1;
+        ArrayList<Integer> jumps = new ArrayList<Integer>();
+    }
+
+    // The code of a method.
+    public class Code {
+
+        int name;
+        int desc;
+        int maxStack;
+        int maxLocals;
+        ByteArray out = new ByteArray();
+        ArrayList<Label> labels = new ArrayList<Label>();
+        ByteArray code;
+
+        Code(int name, int desc, int maxStack, int maxLocals) {
+            this.name = name;
+            this.desc = desc;
+            this.maxStack = maxStack;
+            this.maxLocals = maxLocals;
+        }
+
+        public void op(int opcode) {
+            out.u1(opcode);
+        }
+
+        // Pushes an int constant.
+        public void iconst(int value) {
+            if (value >= -1 && value <= 5) {
+                out.u1(ICONST_0 + value);
+            } else if (value >= -128 && value <= 127) {
+                out.u1(BIPUSH);
+                out.u1(value);
+            } else if (value >= -32768 && value <= 32767) {
+                out.u1(SIPUSH);
+                out.u2(value);
+            } else {
+                out.u1(LDC_W);
+                out.u2(integer(value));
+            }
+        }
+
+        // ILOAD, ISTORE, ALOAD or ASTORE of a local variable.
+        public void load(int opcode, int local) {
+            out.u1(opcode);
+            out.u1(local);
+        }
+
+        public void field(int opcode, String owner, String name, String desc) {
+            out.u1(opcode);
+            out.u2(memberRef(9, owner, name, desc));
+        }
+
+        public void invoke(int opcode, String owner, String name, String desc) {
+            out.u1(opcode);
+            out.u2(memberRef(10, owner, name, desc));
+        }
+
+        // A jump or conditional branch to a label.
+        public void jump(int opcode, Label label) {
+            if (label.jumps.isEmpty() && label.pos < 0) {
+                labels.add(label);
+            }
+            label.jumps.add(out.length);
+            out.u1(opcode);
+            out.u2(0);
+        }
+
+        // Places a label at the current position.
+        public void mark(Label label) {
+            if (label.pos < 0 && label.jumps.isEmpty()) {
+                labels.add(label);
+            }
+            label.pos = out.length;
+        }
+
+        // Fills in the jump offsets.
+        void patch() {
+            code = out;
+            for (int i = 0; i < labels.size(); i++) {
+                Label label = labels.get(i);
+                for (int j = 0; j < label.jumps.size(); j++) {
+                    int at = label.jumps.get(j);
+                    int offset = label.pos - at;
+                    code.data[at + 1] = (byte) (offset >> 8);
+                    code.data[at + 2] = (byte) offset;
+                }
+            }
+        }
+    }
+
+    // Growable big-endian byte buffer.
+    static class ByteArray {
+
+        byte[] data = new byte[256];
+        int length;
+
+        void u1(int value) {
+            if (length == data.length) {
+                byte[] bigger = new byte[length * 2];
+                System.arraycopy(data, 0, bigger, 0, length);
+                data = bigger;
+            }
+            data[length++] = (byte) value;
+        }
+
+        void u2(int value) {
+            u1(value >> 8);
+            u1(value);
+        }
+
+        void u4(int value) {
+            u2(value >> 16);
+            u2(value);
+        }
+
+        void bytes(ByteArray b) {
+            for (int i = 0; i < b.length; i++) {
+                u1(b.data[i]);
+            }
+        }
+
+        byte[] toArray() {
+            byte[] a = new byte[length];
+            System.arraycopy(data, 0, a, 0, length);
+            return a;
+        }
+    }
+}
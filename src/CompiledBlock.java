@@ -0,0 +1,31 @@
+/*
+vNES
+Copyright © 2006-2013 Open Emulation Project
+
+This program is free software: you can redistribute it and/or modify it under
+the terms of the GNU General Public License as published by the Free Software
+Foundation, either version 3 of the License, or (at your option) any later
+version.
+
+This program is distributed in the hope that it will be useful, but WITHOUT ANY
+WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS FOR A
+PARTICULAR PURPOSE.  See the GNU General Public License for more details.
+
+You should have received a copy of the GNU General Public License along with
+this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+// A run of instructions from PRG-ROM that the Recompiler has
+// translated into a class of its own.
+public abstract class CompiledBlock {
+
+    // Address of the first instruction:
+    int address;
+    // Most cycles the instructions before the last one can take.
+    // No event may fall due before these have run:
+    int maxCycles;
+
+    // Runs the block on the registers in r, and leaves them there.
+    // Returns the number of cycles taken.
+    public abstract int run(Recompiler r);
+}
@@ -85,21 +85,21 @@ public class CpuInfo {
     public static final int ADDR_POSTIDXIND = 11;
     public static final int ADDR_INDABS = 12;
 
-    public static int[] getOpData() {
+    public static synchronized int[] getOpData() {
         if (opdata == null) {
             initOpData();
         }
         return opdata;
     }
 
-    public static String[] getInstNames() {
+    public static synchronized String[] getInstNames() {
         if (instname == null) {
             initInstNames();
         }
         return instname;
     }
 
-    public static String getInstName(int inst) {
+    public static synchronized String getInstName(int inst) {
         if (instname == null) {
             initInstNames();
         }
@@ -110,14 +110,14 @@ public class CpuInfo {
         }
     }
 
-    public static String[] getAddressModeNames() {
+    public static synchronized String[] getAddressModeNames() {
         if (addrDesc == null) {
             initAddrDesc();
         }
         return addrDesc;
     }
 
-    public static String getAddressModeName(int addrMode) {
+    public static synchronized String getAddressModeName(int addrMode) {
         if (addrDesc == null) {
             initAddrDesc();
         }
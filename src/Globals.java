@@ -17,6 +17,9 @@ this program.  If not, see <http://www.gnu.org/licenses/>.
 
 import java.util.*;
 
+// Process-wide constants and settings. The emulation settings
+// below are only the defaults for newly created NES instances,
+// each of which keeps its own copy.
 public class Globals {
 
     public static double CPU_FREQ_NTSC = 1789772.5d;
@@ -33,17 +36,13 @@ public class Globals {
 
     public static boolean appletMode = true;
     public static boolean disableSprites = false;
+    public static boolean spriteLimit = false;
     public static boolean timeEmulation = true;
     public static boolean palEmulation;
     public static boolean enableSound = true;
+    public static boolean bandLimitedSound = false;
     public static boolean focused = false;
 
     public static HashMap keycodes = new HashMap(); //Java key codes
     public static HashMap controls = new HashMap(); //vNES controls codes
-
-    public static NES nes;
-
-    public static void println(String s) {
-        nes.getGui().println(s);
-    }
 }
\ No newline at end of file
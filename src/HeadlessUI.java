@@ -0,0 +1,154 @@
+/*
+vNES
+Copyright © 2006-2013 Open Emulation Project
+
+This program is free software: you can redistribute it and/or modify it under
+the terms of the GNU General Public License as published by the Free Software
+Foundation, either version 3 of the License, or (at your option) any later
+version.
+
+This program is distributed in the hope that it will be useful, but WITHOUT ANY
+WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS FOR A
+PARTICULAR PURPOSE.  See the GNU General Public License for more details.
+
+You should have received a copy of the GNU General Public License along with
+this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+// UI implementation without any display, keyboard or sound output.
+// The emulation is driven with NES.runFrame()/runCycles() on the
+// caller's thread; the last completed frame can be read through
+// getFrameBuffer(). No AWT or Swing classes are used.
+public class HeadlessUI implements UI {
+
+    NES nes;
+    VirtualInputHandler joy1;
+    VirtualInputHandler joy2;
+    HiResTimer timer;
+    int[] frame;
+    int frameCount;
+
+    public HeadlessUI() {
+
+        timer = new HiResTimer();
+        joy1 = new VirtualInputHandler();
+        joy2 = new VirtualInputHandler();
+        frame = new int[256 * 240];
+        nes = new NES(this);
+
+        // Run unthrottled, with no audio line:
+        nes.enableSound(false);
+        nes.setTimeEmulation(false);
+
+    }
+
+    public void init(boolean showGui) {
+        // Nothing to show.
+    }
+
+    public void imageReady(boolean skipFrame) {
+
+        frameCount++;
+
+        // The PPU clears its buffer for the next frame right after
+        // this call, so keep a copy of the finished one:
+        System.arraycopy(nes.getPpu().getBuffer(), 0, frame, 0, frame.length);
+
+    }
+
+    public int getFrameCount() {
+        return frameCount;
+    }
+
+    public void resetFrameCount() {
+        frameCount = 0;
+    }
+
+    // Returns the last completed frame.
+    public int[] getFrameBuffer() {
+        return frame;
+    }
+
+    public int getRomFileSize() {
+        return -1;
+    }
+
+    public void showLoadProgress(int percentComplete) {
+        // Not shown.
+    }
+
+    public void destroy() {
+
+        nes = null;
+        joy1 = null;
+        joy2 = null;
+        timer = null;
+        frame = null;
+
+    }
+
+    public NES getNES() {
+        return nes;
+    }
+
+    public InputHandler getJoy1() {
+        return joy1;
+    }
+
+    public InputHandler getJoy2() {
+        return joy2;
+    }
+
+    public BufferView getScreenView() {
+        return null;
+    }
+
+    public BufferView getPatternView() {
+        return null;
+    }
+
+    public BufferView getSprPalView() {
+        return null;
+    }
+
+    public BufferView getNameTableView() {
+        return null;
+    }
+
+    public BufferView getImgPalView() {
+        return null;
+    }
+
+    public HiResTimer getTimer() {
+        return timer;
+    }
+
+    public String getWindowCaption() {
+        return "";
+    }
+
+    public void setWindowCaption(String s) {
+    }
+
+    public void setTitle(String s) {
+    }
+
+    public java.awt.Point getLocation() {
+        return null;
+    }
+
+    public int getWidth() {
+        return 256;
+    }
+
+    public int getHeight() {
+        return 240;
+    }
+
+    public void println(String s) {
+    }
+
+    public void showErrorMsg(String msg) {
+        System.out.println(msg);
+    }
+}
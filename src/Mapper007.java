@@ -19,43 +19,26 @@ public class Mapper007 extends MapperDefault {
 
     int currentOffset;
     int currentMirroring;
-    short[] prgrom;
 
     public void init(NES nes) {
 
         super.init(nes);
         currentOffset = 0;
         currentMirroring = -1;
-
-        // Get ref to ROM:
-        ROM rom = nes.getRom();
-
-        // Read out all PRG rom:
-        int bc = rom.getRomBankCount();
-        prgrom = new short[bc * 16384];
-        for (int i = 0; i < bc; i++) {
-            System.arraycopy(rom.getRomBank(i), 0, prgrom, i * 16384, 16384);
-        }
+        mapPrgRom();
 
     }
 
-    public short load(int address) {
-
-        if (address < 0x8000) {
-
-            // Register read
-            return super.load(address);
-
-        } else {
-
-            if ((address + currentOffset) >= 262144) {
-                return prgrom[(address + currentOffset) - 262144];
-            } else {
-                return prgrom[address + currentOffset];
-
-            }
+    // Maps the selected 32kB of PRG-ROM into 0x8000-0xFFFF.
+    void mapPrgRom() {
 
+        int start = 0x8000 + currentOffset;
+        if (start >= 262144) {
+            start -= 262144;
         }
+        loadRomBank(start >> 14, 0x8000);
+        loadRomBank((start >> 14) + 1, 0xC000);
+
     }
 
     public void write(int address, short value) {
@@ -69,6 +52,7 @@ public class Mapper007 extends MapperDefault {
 
             // Set PRG offset:
             currentOffset = ((value & 0xF) - 1) << 15;
+            mapPrgRom();
 
             // Set mirroring:
             if (currentMirroring != (value & 0x10)) {
@@ -95,6 +79,7 @@ public class Mapper007 extends MapperDefault {
 
             currentMirroring = buf.readByte();
             currentOffset = buf.readInt();
+            mapPrgRom();
 
         }
 
@@ -118,6 +103,9 @@ public class Mapper007 extends MapperDefault {
         super.reset();
         currentOffset = 0;
         currentMirroring = -1;
+        if (rom != null) {
+            mapPrgRom();
+        }
 
     }
 }
\ No newline at end of file
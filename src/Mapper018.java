@@ -38,6 +38,7 @@ public class Mapper018 extends MapperDefault {
             irq_counter = buf.readInt();
             irq_latch = buf.readInt();
             irq_enabled = buf.readBoolean();
+            scheduleIrq();
         }
     }
 
@@ -47,6 +48,11 @@ public class Mapper018 extends MapperDefault {
         // Version:
         buf.putByte((short) 1);
 
+        if (irq_enabled) {
+            // Save what's left of the count:
+            Scheduler sched = nes.getScheduler();
+            irq_counter = (int) Math.max(0, sched.getDeadline(Scheduler.MAPPER) - sched.clock);
+        }
         buf.putInt(irq_counter);
         buf.putInt(irq_latch);
         buf.putBoolean(irq_enabled);
@@ -241,12 +247,19 @@ public class Mapper018 extends MapperDefault {
                 case 0xF000:
                      {
                         irq_counter = irq_latch;
+                        scheduleIrq();
                     }
                     break;
 
                 case 0xF001:
                      {
+                        if (irq_enabled) {
+                            // Keep what's left of the count:
+                            Scheduler sched = nes.getScheduler();
+                            irq_counter = (int) Math.max(0, sched.getDeadline(Scheduler.MAPPER) - sched.clock);
+                        }
                         irq_enabled = (value & 0x01) != 0;
+                        scheduleIrq();
                     }
                     break;
 
@@ -298,20 +311,24 @@ public class Mapper018 extends MapperDefault {
 
     }
 
-    public int syncH(int scanline) {
+    // The IRQ counter counts down once per CPU cycle. Instead of
+    // being clocked, it sets a deadline for when it runs out.
+    private void scheduleIrq() {
 
+        Scheduler sched = nes.getScheduler();
         if (irq_enabled) {
-            if (irq_counter <= 113) {
-
-                irq_counter = (patch == 1) ? 114 : 0;
-                irq_enabled = false;
-                return 3;
-            } else {
-                irq_counter -= 113;
-            }
+            sched.schedule(Scheduler.MAPPER, sched.clock + irq_counter);
+        } else {
+            sched.cancel(Scheduler.MAPPER);
         }
 
-        return 0;
+    }
+
+    public void timerEvent() {
+
+        irq_counter = (patch == 1) ? 114 : 0;
+        irq_enabled = false;
+        nes.getCpu().requestIrq(CPU.IRQ_NORMAL);
 
     }
 
@@ -333,5 +350,6 @@ public class Mapper018 extends MapperDefault {
         irq_enabled = false;
         irq_latch = 0;
         irq_counter = 0;
+        scheduleIrq();
     }
 }
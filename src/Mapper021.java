@@ -17,13 +17,12 @@ this program.  If not, see <http://www.gnu.org/licenses/>.
 
 public class Mapper021 extends MapperDefault {
 
-    private int irq_counter = 0;
-    private int irq_latch = 0;
-    private int irq_enabled = 0;
+    private VrcIrq irq;
     private int regs[] = new int[9];
 
     public void init(NES nes) {
         super.init(nes);
+        irq = new VrcIrq(nes);
         reset();
     }
 
@@ -205,31 +204,28 @@ public class Mapper021 extends MapperDefault {
 
                 case 0xF000:
                      {
-                        irq_latch = (irq_latch & 0xF0) | (value & 0x0F);
+                        irq.setLatchLow(value);
                     }
                     break;
 
                 case 0xF002:
                 case 0xF040:
                      {
-                        irq_latch = (irq_latch & 0x0F) | ((value & 0x0F) << 4);
+                        irq.setLatchHigh(value);
                     }
                     break;
 
                 case 0xF003:
                 case 0xF0C0:
                      {
-                        irq_enabled = (irq_enabled & 0x01) * 3;
+                        irq.acknowledge();
                     }
                     break;
 
                 case 0xF004:
                 case 0xF080:
                      {
-                        irq_enabled = value & 0x03;
-                        if ((irq_enabled & 0x02) != 0) {
-                            irq_counter = irq_latch;
-                        }
+                        irq.writeControl(value);
                     }
                     break;
             }
@@ -262,20 +258,8 @@ public class Mapper021 extends MapperDefault {
         nes.getCpu().requestIrq(CPU.IRQ_RESET);
     }
 
-    public int syncH(int scanline) {
-
-        if ((irq_enabled & 0x02) != 0) {
-            if (irq_counter == 0) {
-                irq_counter = irq_latch;
-                irq_enabled = (irq_enabled & 0x01) * 3;
-                return 3;
-            } else {
-                irq_counter++;
-            }
-        }
-
-        return 0;
-
+    public void timerEvent() {
+        irq.timerEvent();
     }
 
     public void reset() {
@@ -291,8 +275,6 @@ public class Mapper021 extends MapperDefault {
         regs[8] = 0;
 
         // IRQ Settings
-        irq_enabled = 0;
-        irq_latch = 0;
-        irq_counter = 0;
+        irq.reset();
     }
 }
\ No newline at end of file
@@ -17,14 +17,13 @@ this program.  If not, see <http://www.gnu.org/licenses/>.
 
 public class Mapper023 extends MapperDefault {
 
-    private int irq_counter = 0;
-    private int irq_latch = 0;
-    private int irq_enabled = 0;
+    private VrcIrq irq;
     private int regs[] = new int[9];
     int patch = 0xFFFF;
 
     public void init(NES nes) {
         super.init(nes);
+        irq = new VrcIrq(nes);
         reset();
     }
 
@@ -205,28 +204,25 @@ public class Mapper023 extends MapperDefault {
 
                 case 0xF000:
                      {
-                        irq_latch = (irq_latch & 0xF0) | (value & 0x0F);
+                        irq.setLatchLow(value);
                     }
                     break;
 
                 case 0xF004:
                      {
-                        irq_latch = (irq_latch & 0x0F) | ((value & 0x0F) << 4);
+                        irq.setLatchHigh(value);
                     }
                     break;
 
                 case 0xF008:
                      {
-                        irq_enabled = value & 0x03;
-                        if ((irq_enabled & 0x02) != 0) {
-                            irq_counter = irq_latch;
-                        }
+                        irq.writeControl(value);
                     }
                     break;
 
                 case 0xF00C:
                      {
-                        irq_enabled = (irq_enabled & 0x01) * 3;
+                        irq.acknowledge();
                     }
                     break;
             }
@@ -256,22 +252,8 @@ public class Mapper023 extends MapperDefault {
         nes.getCpu().requestIrq(CPU.IRQ_RESET);
     }
 
-    public int syncH(int scanline) {
-
-
-        if ((irq_enabled & 0x02) != 0) {
-            if (irq_counter == 0xFF) {
-                irq_counter = irq_latch;
-                irq_enabled = (irq_enabled & 0x01) * 3;
-                return 3;
-            } else {
-                irq_counter++;
-            }
-        }
-
-
-        return 0;
-
+    public void timerEvent() {
+        irq.timerEvent();
     }
 
     public void reset() {
@@ -287,8 +269,6 @@ public class Mapper023 extends MapperDefault {
         regs[8] = 0;
 
         // IRQ Settings
-        irq_enabled = 0;
-        irq_latch = 0;
-        irq_counter = 0;
+        irq.reset();
     }
 }
\ No newline at end of file
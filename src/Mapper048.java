@@ -135,24 +135,19 @@ public class Mapper048 extends MapperDefault {
         nes.getCpu().requestIrq(CPU.IRQ_RESET);
     }
 
-    public int syncH(int scanline) {
-        if (irq_enabled) {
-            if ((ppu.scanline & 0x18) != 00) {
-                if (scanline >= 0 && scanline <= 239) {
-                    if (irq_counter == 0) {
-                        irq_counter = 0;
-                        irq_enabled = false;
-
-                        return 3;
+    // Clocked by the PPU on each rendered scanline.
+    public void clockIrqCounter() {
 
-                    } else {
-                        irq_counter++;
-                    }
-                }
+        if (irq_enabled) {
+            if (irq_counter == 0xFF) {
+                irq_counter = 0;
+                irq_enabled = false;
+                nes.getCpu().requestIrq(CPU.IRQ_NORMAL);
+            } else {
+                irq_counter++;
             }
         }
 
-        return 0;
     }
 
     public void reset() {
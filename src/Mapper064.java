@@ -220,21 +220,16 @@ public class Mapper064 extends MapperDefault {
 
     }
 
-    public int syncH(int scanline) {
+    // Clocked by the PPU on each rendered scanline.
+    public void clockIrqCounter() {
 
         if (irq_enabled) {
-            if ((scanline >= 0) && (scanline <= 239)) {
-                if ((ppu.scanline & 0x18) != 00) {
-                    if (--irq_counter == 0) {
-                        irq_counter = irq_latch;
-                        return 3;
-                    }
-                }
+            if (--irq_counter == 0) {
+                irq_counter = irq_latch;
+                nes.getCpu().requestIrq(CPU.IRQ_NORMAL);
             }
         }
 
-        return 0;
-
     }
 
     public void reset() {
@@ -17,8 +17,14 @@ this program.  If not, see <http://www.gnu.org/licenses/>.
 
 public class Mapper105 extends MapperDefault {
 
+    // Count the IRQ counter raises an IRQ at, with all the
+    // DIP switches that set the time limit on:
+    private static final int IRQ_TIME = 0x3E000000;
+
     private int irq_counter = 0;
     private boolean irq_enabled = false;
+    // Time that irq_counter is up to date with:
+    private long irq_time = 0;
     private int init_state = 0;
     private int[] regs = new int[4];
     int bits = 0;
@@ -36,6 +42,8 @@ public class Mapper105 extends MapperDefault {
             irq_counter = buf.readInt();
             irq_enabled = buf.readBoolean();
             init_state = buf.readInt();
+            irq_time = nes.getScheduler().clock;
+            scheduleIrq();
         }
     }
 
@@ -46,6 +54,7 @@ public class Mapper105 extends MapperDefault {
         buf.putByte((short) 1);
 
         // State:
+        updateIrq();
         buf.putInt(irq_counter);
         buf.putBoolean(irq_enabled);
         buf.putInt(init_state);
@@ -122,30 +131,49 @@ public class Mapper105 extends MapperDefault {
                             load8kRomBank((regs[1] & 0x06) * 2 + 3, 0xE000);
                         }
 
+                        updateIrq();
                         if ((regs[1] & 0x10) != 0) {
                             irq_counter = 0;
                             irq_enabled = false;
                         } else {
                             irq_enabled = true;
                         }
+                        scheduleIrq();
                     }
                     break;
             }
         }
     }
 
-    public int syncH(int scanline) {
+    // The IRQ counter counts CPU cycles while enabled. Instead of
+    // being clocked, it's brought up to date when it's used, and
+    // sets a deadline for when it reaches IRQ_TIME.
+    private void updateIrq() {
 
-        if (scanline == 0) {
-            if (irq_enabled) {
-                irq_counter += 29781;
-            }
-            if (((irq_counter | 0x21FFFFFF) & 0x3E000000) == 0x3E000000) {
-                return 3;
-            }
+        long clock = nes.getScheduler().clock;
+        if (irq_enabled) {
+            irq_counter = (int) ((irq_counter + clock - irq_time) & 0x3FFFFFFF);
+        }
+        irq_time = clock;
+
+    }
+
+    private void scheduleIrq() {
+
+        Scheduler sched = nes.getScheduler();
+        if (irq_enabled) {
+            sched.schedule(Scheduler.MAPPER, irq_time + ((IRQ_TIME - irq_counter - 1) & 0x3FFFFFFF) + 1);
+        } else {
+            sched.cancel(Scheduler.MAPPER);
         }
 
-        return 0;
+    }
+
+    public void timerEvent() {
+
+        updateIrq();
+        nes.getCpu().requestIrq(CPU.IRQ_NORMAL);
+        scheduleIrq();
 
     }
 
@@ -181,6 +209,8 @@ public class Mapper105 extends MapperDefault {
 
         irq_enabled = false;
         irq_counter = 0;
+        irq_time = nes.getScheduler().clock;
+        scheduleIrq();
         init_state = 0;
     }
 }
\ No newline at end of file
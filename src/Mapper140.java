@@ -21,6 +21,9 @@ public class Mapper140 extends MapperDefault {
 
         super.init(nes);
 
+        // Writes to 0x6000-0x7FFF select banks:
+        pages.unmapWrite(0x6000, 0x2000);
+
     }
 
     public void loadROM(ROM rom) {
@@ -135,22 +135,17 @@ public class Mapper182 extends MapperDefault {
         nes.getCpu().requestIrq(CPU.IRQ_RESET);
     }
 
-    public int syncH(int scanline) {
+    // Clocked by the PPU on each rendered scanline.
+    public void clockIrqCounter() {
 
         if (irq_enabled) {
-            if ((scanline >= 0) && (scanline <= 240)) {
-                if ((ppu.scanline & 0x18) != 00) {
-                    if (0 == (--irq_counter)) {
-                        irq_counter = 0;
-                        irq_enabled = false;
-                        return 3;
-                    }
-                }
+            if (0 == (--irq_counter)) {
+                irq_counter = 0;
+                irq_enabled = false;
+                nes.getCpu().requestIrq(CPU.IRQ_NORMAL);
             }
         }
 
-        return 0;
-
     }
 
     public void reset() {
@@ -32,6 +32,13 @@ public class MapperDefault implements MemoryMapper {
     public boolean gameGenieActive;
     public int mouseX;
     public int mouseY;
+    public PageTable pages;
+    // 8kB PRG-ROM bank mapped at 0x8000, 0xA000, 0xC000 and 0xE000,
+    // or -1 if the window still reads from main memory:
+    public int[] prgBank8k = new int[4];
+    // 1kB CHR-ROM bank mapped at each 1kB of the pattern tables,
+    // or -1 if that part still reads from VRAM:
+    public int[] chrBank1k = new int[8];
     int tmp;
 
     public void init(NES nes) {
@@ -47,18 +54,67 @@ public class MapperDefault implements MemoryMapper {
         cpuMemSize = cpuMem.getMemSize();
         joypadLastWrite = -1;
 
+        // Set up the CPU page table:
+        pages = new PageTable();
+        for (int i = 0; i < 0x2000; i += 0x800) {
+            // RAM, mirrored:
+            pages.mapRead(i, 0x800, cpuMemArray, 0);
+            pages.mapWrite(i, 0x800, cpuMemArray, 0);
+        }
+        // 0x2000-0x40FF are I/O ports, handled by load/write.
+        // Expansion area, SaveRAM and ROM are read from main memory:
+        pages.mapRead(0x4100, 0xBF00, cpuMemArray, 0x4100);
+        // SaveRAM can be written directly:
+        pages.mapWrite(0x6000, 0x2000, cpuMemArray, 0x6000);
+        for (int i = 0; i < prgBank8k.length; i++) {
+            prgBank8k[i] = -1;
+        }
+        for (int i = 0; i < chrBank1k.length; i++) {
+            chrBank1k[i] = -1;
+        }
+        ppu.unmapChr();
+
+    }
+
+    public PageTable getPageTable() {
+        return pages;
     }
 
     public void stateLoad(ByteBuffer buf) {
 
         // Check version:
-        if (buf.readByte() == 1) {
+        int version = buf.readByte();
+        if (version >= 1 && version <= 3) {
 
             // Joypad stuff:
             joy1StrobeState = buf.readInt();
             joy2StrobeState = buf.readInt();
             joypadLastWrite = buf.readInt();
 
+            // PRG-ROM banks. Version 1 states have the
+            // banks copied into main memory instead:
+            for (int i = 0; i < prgBank8k.length; i++) {
+                int bank = version >= 2 ? buf.readInt() : -1;
+                if (bank >= 0) {
+                    load8kRomBank(bank, 0x8000 + (i << 13));
+                } else {
+                    pages.mapRead(0x8000 + (i << 13), 0x2000, cpuMemArray, 0x8000 + (i << 13));
+                    prgBank8k[i] = -1;
+                }
+            }
+
+            // CHR-ROM banks. Older states have the banks
+            // copied into VRAM and the PPU's tiles:
+            ppu.unmapChr();
+            for (int i = 0; i < chrBank1k.length; i++) {
+                int bank = version >= 3 ? buf.readInt() : -1;
+                if (bank >= 0) {
+                    load1kVromBank(bank, i << 10);
+                } else {
+                    chrBank1k[i] = -1;
+                }
+            }
+
             // Mapper specific stuff:
             mapperInternalStateLoad(buf);
 
@@ -69,13 +125,23 @@ public class MapperDefault implements MemoryMapper {
     public void stateSave(ByteBuffer buf) {
 
         // Version:
-        buf.putByte((short) 1);
+        buf.putByte((short) 3);
 
         // Joypad stuff:
         buf.putInt(joy1StrobeState);
         buf.putInt(joy2StrobeState);
         buf.putInt(joypadLastWrite);
 
+        // PRG-ROM banks:
+        for (int i = 0; i < prgBank8k.length; i++) {
+            buf.putInt(prgBank8k[i]);
+        }
+
+        // CHR-ROM banks:
+        for (int i = 0; i < chrBank1k.length; i++) {
+            buf.putInt(chrBank1k[i]);
+        }
+
         // Mapper specific stuff:
         mapperInternalStateSave(buf);
 
@@ -159,6 +225,12 @@ public class MapperDefault implements MemoryMapper {
         // Wrap around:
         address &= 0xFFFF;
 
+        // Directly mapped page:
+        short[] page = pages.readPage[address >> 8];
+        if (page != null) {
+            return page[pages.readOffset[address >> 8] + (address & 0xFF)];
+        }
+
         // Check address range:
         if (address > 0x4017) {
 
@@ -589,13 +661,16 @@ public class MapperDefault implements MemoryMapper {
 
     }
 
+    // PRG-ROM is not copied into main memory. Switching a bank
+    // only points the CPU page table at the ROM's bank array, so
+    // cpuMem.mem no longer holds the ROM; read it through load().
     protected void loadRomBank(int bank, int address) {
 
         // Loads a ROM bank into the specified address.
         bank %= rom.getRomBankCount();
-        short[] data = rom.getRomBank(bank);
-        //cpuMem.write(address,data,data.length);
-        System.arraycopy(rom.getRomBank(bank), 0, cpuMem.mem, address, 16384);
+        pages.mapRom(address, 16384, rom, bank, 0);
+        prgBank8k[(address - 0x8000) >> 13] = bank * 2;
+        prgBank8k[((address - 0x8000) >> 13) + 1] = bank * 2 + 1;
 
     }
 
@@ -606,10 +681,14 @@ public class MapperDefault implements MemoryMapper {
         }
         ppu.triggerRendering();
 
-        System.arraycopy(rom.getVromBank(bank % rom.getVromBankCount()), 0, nes.ppuMem.mem, address, 4096);
-
-        Tile[] vromTile = rom.getVromBankTiles(bank % rom.getVromBankCount());
-        System.arraycopy(vromTile, 0, ppu.ptTile, address >> 4, 256);
+        // Like PRG-ROM, CHR-ROM isn't copied into VRAM. The PPU's
+        // pattern table windows are pointed at the bank and its
+        // decoded tiles instead.
+        bank %= rom.getVromBankCount();
+        ppu.mapChr(address, 4096, rom.getVromBank(bank), rom.getVromBankTiles(bank), 0);
+        for (int i = 0; i < 4; i++) {
+            chrBank1k[(address >> 10) + i] = bank * 4 + i;
+        }
 
     }
 
@@ -641,14 +720,8 @@ public class MapperDefault implements MemoryMapper {
 
         int bank4k = (bank1k / 4) % rom.getVromBankCount();
         int bankoffset = (bank1k % 4) * 1024;
-        System.arraycopy(rom.getVromBank(bank4k), 0, nes.ppuMem.mem, bankoffset, 1024);
-
-        // Update tiles:
-        Tile[] vromTile = rom.getVromBankTiles(bank4k);
-        int baseIndex = address >> 4;
-        for (int i = 0; i < 64; i++) {
-            ppu.ptTile[baseIndex + i] = vromTile[((bank1k % 4) << 6) + i];
-        }
+        ppu.mapChr(address, 1024, rom.getVromBank(bank4k), rom.getVromBankTiles(bank4k), bankoffset);
+        chrBank1k[address >> 10] = bank4k * 4 + (bank1k % 4);
 
     }
 
@@ -661,14 +734,9 @@ public class MapperDefault implements MemoryMapper {
 
         int bank4k = (bank2k / 2) % rom.getVromBankCount();
         int bankoffset = (bank2k % 2) * 2048;
-        System.arraycopy(rom.getVromBank(bank4k), bankoffset, nes.ppuMem.mem, address, 2048);
-
-        // Update tiles:
-        Tile[] vromTile = rom.getVromBankTiles(bank4k);
-        int baseIndex = address >> 4;
-        for (int i = 0; i < 128; i++) {
-            ppu.ptTile[baseIndex + i] = vromTile[((bank2k % 2) << 7) + i];
-        }
+        ppu.mapChr(address, 2048, rom.getVromBank(bank4k), rom.getVromBankTiles(bank4k), bankoffset);
+        chrBank1k[address >> 10] = bank4k * 4 + (bank2k % 2) * 2;
+        chrBank1k[(address >> 10) + 1] = bank4k * 4 + (bank2k % 2) * 2 + 1;
 
     }
 
@@ -677,8 +745,8 @@ public class MapperDefault implements MemoryMapper {
         int bank16k = (bank8k / 2) % rom.getRomBankCount();
         int offset = (bank8k % 2) * 8192;
 
-        short[] bank = rom.getRomBank(bank16k);
-        cpuMem.write(address, bank, offset, 8192);
+        pages.mapRom(address, 8192, rom, bank16k, offset);
+        prgBank8k[(address - 0x8000) >> 13] = bank16k * 2 + (bank8k % 2);
 
     }
 
@@ -686,6 +754,11 @@ public class MapperDefault implements MemoryMapper {
         // Does nothing. This is used by the MMC3 mapper.
     }
 
+    public void timerEvent() {
+        // Does nothing. Called when the deadline a mapper
+        // set in the Scheduler.MAPPER slot is reached.
+    }
+
     public void latchAccess(int address) {
         // Does nothing. This is used by MMC2.
     }
@@ -25,6 +25,8 @@ public interface MemoryMapper {
 
     public short load(int address);
 
+    public PageTable getPageTable();
+
     public short joy1Read();
 
     public short joy2Read();
@@ -35,6 +37,8 @@ public interface MemoryMapper {
 
     public void clockIrqCounter();
 
+    public void timerEvent();
+
     public void loadBatteryRam();
 
     public void destroy();
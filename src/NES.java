@@ -17,7 +17,7 @@ this program.  If not, see <http://www.gnu.org/licenses/>.
 
 public class NES {
 
-    public AppletUI gui;
+    public UI gui;
     public CPU cpu;
     public PPU ppu;
     public PAPU papu;
@@ -25,16 +25,28 @@ public class NES {
     public Memory ppuMem;
     public Memory sprMem;
     public MemoryMapper memMapper;
+    public Scheduler scheduler;
     public PaletteTable palTable;
     public ROM rom;
     int cc;
     public String romFile;
     boolean isRunning = false;
 
+    // Emulation settings for this instance.
+    // New instances start out with the defaults from Globals:
+    boolean appletMode = Globals.appletMode;
+    boolean enableSound = Globals.enableSound;
+    boolean timeEmulation = Globals.timeEmulation;
+    boolean palEmulation = Globals.palEmulation;
+    boolean bandLimitedSound = Globals.bandLimitedSound;
+    boolean spriteLimit = Globals.spriteLimit;
+    int preferredFrameRate = Globals.preferredFrameRate;
+    int frameTime = Globals.frameTime;
+    short memoryFlushValue = Globals.memoryFlushValue;
+
     // Creates the NES system.
-    public NES(AppletUI gui) {
+    public NES(UI gui) {
 
-        Globals.nes = this;
         this.gui = gui;
 
         // Create memory:
@@ -42,6 +54,8 @@ public class NES {
         ppuMem = new Memory(this, 0x8000);	// VRAM memory (internal to PPU)
         sprMem = new Memory(this, 0x100);	// Sprite RAM  (internal to PPU)
 
+        // Create the master clock:
+        scheduler = new Scheduler();
 
         // Create system units:
         cpu = new CPU(this);
@@ -58,9 +72,10 @@ public class NES {
             }
         }
 
-        // Load NTSC palette:
+        // Load NTSC palette. The message goes through the UI, so
+        // headless and batch instances don't print it:
         if (!palTable.loadNTSCPalette()) {
-            //System.out.println("Unable to load palette file. Using default.");
+            gui.println("PaletteTable: Internal Palette Loaded.");
             palTable.loadDefaultPalette();
         }
 
@@ -68,8 +83,8 @@ public class NES {
         cpu.init();
         ppu.init();
 
-        // Enable sound:
-        enableSound(true);
+        // The sound line is opened by enableSound()
+        // or when emulation is started.
 
         // Clear CPU memory:
         clearCPUMemory();
@@ -146,7 +161,7 @@ public class NES {
 
     public void startEmulation() {
 
-        if (Globals.enableSound && !papu.isRunning()) {
+        if (enableSound && !papu.isRunning()) {
             papu.start();
         }
         {
@@ -163,11 +178,60 @@ public class NES {
             isRunning = false;
         }
 
-        if (Globals.enableSound && papu.isRunning()) {
+        if (enableSound && papu.isRunning()) {
             papu.stop();
         }
     }
 
+    // Runs the emulation on the calling thread until the PPU
+    // reaches the end of the current frame (start of VBlank).
+    // Returns false if there is no ROM or the CPU has crashed.
+    public boolean runFrame() {
+
+        if (!prepareStep()) {
+            return false;
+        }
+
+        cpu.stepFrame = true;
+        cpu.cycleBudget = 0;
+        cpu.emulate();
+        cpu.stepFrame = false;
+
+        return !cpu.crash;
+
+    }
+
+    // Runs the emulation on the calling thread for at least the
+    // given number of CPU cycles. The last instruction may run past
+    // the budget. Returns the number of cycles actually run.
+    public int runCycles(int cycles) {
+
+        if (cycles <= 0 || !prepareStep()) {
+            return 0;
+        }
+
+        cpu.cycleBudget = cycles;
+        cpu.emulate();
+        cpu.cycleBudget = 0;
+
+        return cpu.cyclesRun;
+
+    }
+
+    // Stepping runs on the caller's thread, so the CPU thread
+    // must not be running at the same time.
+    private boolean prepareStep() {
+
+        if (rom == null || !rom.isValid() || cpu.crash) {
+            return false;
+        }
+        if (isRunning) {
+            stopEmulation();
+        }
+        return true;
+
+    }
+
     public void reloadRom() {
 
         if (romFile != null) {
@@ -178,7 +242,7 @@ public class NES {
 
     public void clearCPUMemory() {
 
-        short flushval = Globals.memoryFlushValue;
+        short flushval = memoryFlushValue;
         for (int i = 0; i < 0x2000; i++) {
             cpuMem.mem[i] = flushval;
         }
@@ -243,6 +307,10 @@ public class NES {
         return memMapper;
     }
 
+    public Scheduler getScheduler() {
+        return scheduler;
+    }
+
     // Loads a ROM file into the CPU and PPU.
     // The ROM file is validated first.
     public boolean loadRom(String file) {
@@ -285,6 +353,7 @@ public class NES {
         if (rom != null) {
 //            rom.closeRom();
         }
+        scheduler.reset();
         if (memMapper != null) {
             memMapper.reset();
         }
@@ -323,7 +392,7 @@ public class NES {
         }
 
         //System.out.println("** SOUND ENABLE = "+enable+" **");
-        Globals.enableSound = enable;
+        this.enableSound = enable;
 
         if (wasRunning) {
             startEmulation();
@@ -331,14 +400,81 @@ public class NES {
 
     }
 
+    public boolean isSoundEnabled() {
+        return enableSound;
+    }
+
+    // Whether the CPU clocks the PPU. Without it, only the CPU
+    // and pAPU are emulated.
+    public void setAppletMode(boolean enable) {
+        appletMode = enable;
+    }
+
+    public boolean isAppletMode() {
+        return appletMode;
+    }
+
+    // Whether to throttle emulation to the preferred frame rate.
+    public void setTimeEmulation(boolean enable) {
+        timeEmulation = enable;
+    }
+
+    public boolean isTimeEmulation() {
+        return timeEmulation;
+    }
+
+    // Takes effect the next time emulation is started.
+    public void setPalEmulation(boolean enable) {
+        palEmulation = enable;
+    }
+
+    public boolean isPalEmulation() {
+        return palEmulation;
+    }
+
+    // Whether the pAPU synthesizes band-limited output instead of
+    // averaging the channels over each sample. Takes effect on the
+    // next reset.
+    public void setBandLimitedSound(boolean enable) {
+        bandLimitedSound = enable;
+    }
+
+    public boolean isBandLimitedSound() {
+        return bandLimitedSound;
+    }
+
+    // Whether the PPU shows at most 8 sprites on a scanline, like
+    // the hardware, instead of all of them.
+    public void setSpriteLimit(boolean enable) {
+        spriteLimit = enable;
+    }
+
+    public boolean isSpriteLimit() {
+        return spriteLimit;
+    }
+
+    // Value that CPU RAM is filled with on reset.
+    public void setMemoryFlushValue(short value) {
+        memoryFlushValue = value;
+    }
+
     public void setFramerate(int rate) {
 
-        Globals.preferredFrameRate = rate;
-        Globals.frameTime = 1000000 / rate;
+        preferredFrameRate = rate;
+        frameTime = 1000000 / rate;
         papu.setSampleRate(papu.getSampleRate(), false);
 
     }
 
+    public int getPreferredFrameRate() {
+        return preferredFrameRate;
+    }
+
+    // Returns microseconds per frame.
+    public int getFrameTime() {
+        return frameTime;
+    }
+
     public void destroy() {
 
         if (cpu != null) {
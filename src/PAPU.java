@@ -94,17 +94,37 @@ public final class PAPU {
     int stereoPosRTriangle;
     int stereoPosRNoise;
     int stereoPosRDMC;
-    int extraCycles;
-    int maxCycles;
+
+    // Band-limited synthesis. Instead of averaging the channel
+    // outputs over each sample, a step is added to the blip
+    // buffers whenever the mixed output changes, and they are
+    // read out once per frame:
+    static final int BLIP_WINDOW = 16;
+    static final int BLIP_PHASES = 32;
+    static final int BLIP_SINC_PERIODS = 7;
+    boolean bandLimited;
+    BlipBuffer blipL;
+    BlipBuffer blipR;
+    // Samples taken since the last read out:
+    int blipPos;
+    // Output levels in the blip buffers, and the channel values
+    // they were mixed from:
+    int blipLevelL, blipLevelR;
+    int blipSquare1, blipSquare2, blipTriangle, blipNoise, blipDmc;
+
+    // Scheduler time the APU has been run up to:
+    long clock;
+    Scheduler sched;
 
     public PAPU(NES nes) {
 
         this.nes = nes;
         cpuMem = nes.getCpuMemory();
+        sched = nes.getScheduler();
 
         setSampleRate(sampleRate, false);
         sampleBuffer = new byte[bufferSize * (stereo ? 4 : 2)];
-        ismpbuffer = new int[bufferSize * (stereo ? 2 : 1)];
+        ismpbuffer = new int[bufferSize * 2];
         bufferIndex = 0;
         frameIrqEnabled = false;
         initCounter = 2048;
@@ -115,6 +135,11 @@ public final class PAPU {
         noise = new ChannelNoise(this);
         dmc = new ChannelDM(this);
 
+        blipL = new BlipBuffer();
+        blipL.init(bufferSize + BLIP_WINDOW, BLIP_WINDOW, BLIP_PHASES, BLIP_SINC_PERIODS);
+        blipR = new BlipBuffer();
+        blipR.init(bufferSize + BLIP_WINDOW, BLIP_WINDOW, BLIP_PHASES, BLIP_SINC_PERIODS);
+
         masterVolume = 256;
         panning = new int[]{
                     80,
@@ -157,7 +182,7 @@ public final class PAPU {
 
         if (mixerInfo == null || mixerInfo.length == 0) {
             //System.out.println("No audio mixer available, sound disabled.");
-            Globals.enableSound = false;
+            nes.enableSound = false;
             return;
         }
 
@@ -290,6 +315,11 @@ public final class PAPU {
             }
 
         }
+
+        if (bandLimited && nes.enableSound) {
+            updateLevel();
+        }
+
     }
 
     public void resetCounter() {
@@ -319,34 +349,159 @@ public final class PAPU {
 
     }
 
-    // Clocks the frame counter. It should be clocked at
-    // twice the cpu speed, so the cycles will be
-    // divided by 2 for those counters that are
-    // clocked at cpu speed.
-    public void clockFrameCounter(int nCycles) {
+    // The APU isn't clocked after every instruction. It runs
+    // lazily, in one batch up to the current time, when the CPU
+    // is about to access a register or the mapper, at the end of
+    // each frame, and when its deadline in the scheduler is
+    // reached. The deadline is set for when an IRQ may be raised
+    // or the CPU stalled: the next frame counter tick or DMC
+    // sample fetch.
+
+    // Runs the APU up to the scheduler's clock.
+    public void catchUp() {
+
+        int n = (int) (sched.clock - clock);
+        clock = sched.clock;
+        if (nes.enableSound) {
+            advance(n);
+        }
+        scheduleNext();
+
+    }
+
+    // Runs the APU up to the end of the frame, and reads out the
+    // frame's samples if they're band-limited.
+    public void endFrame() {
+
+        catchUp();
+        if (bandLimited && nes.enableSound) {
+            readBlip();
+        }
+
+    }
+
+    // Called by the CPU when the APU's deadline is reached. The
+    // frame IRQ is a level, and is asked for after every
+    // instruction while it's active.
+    public void runEvents() {
+
+        if (frameIrqEnabled && frameIrqActive) {
+            nes.cpu.requestIrq(CPU.IRQ_NORMAL);
+        }
+        catchUp();
+
+    }
+
+    // Whether the DMC may fetch samples, stalling the CPU, in
+    // between catch-ups.
+    public boolean isDmcFetching() {
+        return nes.enableSound && dmc.isEnabled && dmc.dmaFrequency > 0;
+    }
+
+    // Sets the deadline for the next event that may raise an IRQ.
+    private void scheduleNext() {
 
-        if (initCounter > 0) {
-            if (initingHardware) {
-                initCounter -= nCycles;
+        long time = Scheduler.NEVER;
+        if (nes.enableSound) {
+
+            if (frameIrqEnabled && frameIrqActive) {
+
+                // Next instruction:
+                time = clock + 1;
+
+            } else {
+
+                if (frameIrqEnabled && countSequence == 0) {
+                    // Next frame counter tick:
+                    time = clock + Math.max(1, (frameTime - masterFrameCounter + 1) >> 1);
+                }
+                if (isDmcFetching()) {
+                    if (dmc.irqGenerated) {
+                        // Next DMC clock:
+                        time = Math.min(time, clock + Math.max(1, (dmc.shiftCounter + 7) >> 3));
+                    } else if (dmc.playLengthCounter > 0 || dmc.playMode == ChannelDM.MODE_LOOP) {
+                        // Next sample fetch, which stalls the CPU and
+                        // may raise an IRQ. It's on the DMC clock that
+                        // shifts out the last bit of the current byte:
+                        int eighths = dmc.shiftCounter + (dmc.dmaCounter - 1) * dmc.dmaFrequency;
+                        time = Math.min(time, clock + Math.max(1, (eighths + 7) >> 3));
+                    }
+                }
+
+            }
+
+        }
+        sched.schedule(Scheduler.APU, time);
+
+    }
+
+    // Runs the APU for the given number of CPU cycles, split
+    // at each channel timer, frame counter tick and sample.
+    public void advance(int nCycles) {
+
+        int n;
+        while (nCycles > 0) {
+
+            if (initCounter > 0 && initingHardware) {
+                n = Math.min(nCycles, initCounter);
+                initCounter -= n;
                 if (initCounter <= 0) {
                     initingHardware = false;
                 }
-                return;
+            } else {
+                n = cyclesToNextEvent(nCycles);
+                clockFrameCounter(n);
+                if (bandLimited) {
+                    updateLevel();
+                }
             }
+            nCycles -= n;
+
         }
 
-        // Don't process ticks beyond next sampling:
-        nCycles += extraCycles;
-        maxCycles = sampleTimerMax - sampleTimer;
-        if ((nCycles << 10) > maxCycles) {
+    }
 
-            extraCycles = ((nCycles << 10) - maxCycles) >> 10;
-            nCycles -= extraCycles;
+    // Returns the number of cycles, at most max, up to and
+    // including the next cycle where a channel timer runs out,
+    // the frame counter ticks or a sample is taken. For
+    // band-limited output, the noise channel is stepped exactly
+    // instead, and samples need no stepping.
+    private int cyclesToNextEvent(int max) {
 
-        } else {
+        int n = max;
+        if (dmc.isEnabled && dmc.dmaFrequency > 0) {
+            n = Math.min(n, (dmc.shiftCounter + 7) >> 3);
+        }
+        if (triangle.progTimerMax > 0) {
+            n = Math.min(n, triangle.progTimerCount);
+        }
+        n = Math.min(n, square1.progTimerCount);
+        n = Math.min(n, square2.progTimerCount);
+        if (bandLimited && noise.progTimerMax > 0) {
+            n = Math.min(n, noise.progTimerCount);
+        }
+        n = Math.min(n, (frameTime - masterFrameCounter + 1) >> 1);
+        if (!bandLimited) {
+            n = Math.min(n, (sampleTimerMax - sampleTimer + 1023) >> 10);
+        }
+        return Math.max(1, n);
+
+    }
 
-            extraCycles = 0;
+    // Clocks the frame counter. It should be clocked at
+    // twice the cpu speed, so the cycles will be
+    // divided by 2 for those counters that are
+    // clocked at cpu speed. Timers only run out on the
+    // last of nCycles (see advance()). The cycles before
+    // it add to the samples with the channels as they are,
+    // and the last one with what it changes, the same as
+    // clocking each cycle on its own. So the output doesn't
+    // depend on where a span of cycles is split.
+    public void clockFrameCounter(int nCycles) {
 
+        if (nCycles > 1 && !bandLimited) {
+            clockQuiet(nCycles - 1);
+            nCycles = 1;
         }
 
         // Clock DMC:
@@ -413,87 +568,140 @@ public final class PAPU {
         }
 
         // Clock noise channel Prog timer:
-        int acc_c = nCycles;
-        if (noise.progTimerCount - acc_c > 0) {
+        clockNoise(nCycles);
+
+        // Clock frame counter at double CPU speed:
+        masterFrameCounter += (nCycles << 1);
+        if (masterFrameCounter >= frameTime) {
+
+            // 240Hz tick:
+            masterFrameCounter -= frameTime;
+            frameCounterTick();
 
-            // Do all cycles at once:
-            noise.progTimerCount -= acc_c;
-            noise.accCount += acc_c;
-            noise.accValue += acc_c * noise.sampleValue;
+
+        }
+
+
+        // Clock sample timer:
+        sampleTimer += nCycles << 10;
+        if (bandLimited) {
+
+            while (sampleTimer >= sampleTimerMax) {
+                sampleTimer -= sampleTimerMax;
+                if (++blipPos >= bufferSize) {
+                    readBlip();
+                }
+            }
 
         } else {
 
-            // Slow-step:
-            while ((acc_c--) > 0) {
+            // Accumulate sample value:
+            accSample(nCycles);
 
-                if (--noise.progTimerCount <= 0 && noise.progTimerMax > 0) {
+            if (sampleTimer >= sampleTimerMax) {
 
-                    // Update noise shift register:
-                    noise.shiftReg <<= 1;
-                    noise.tmp = (((noise.shiftReg << (noise.randomMode == 0 ? 1 : 6)) ^ noise.shiftReg) & 0x8000);
-                    if (noise.tmp != 0) {
+                // Sample channels:
+                sample();
+                sampleTimer -= sampleTimerMax;
 
-                        // Sample value must be 0.
-                        noise.shiftReg |= 0x01;
-                        noise.randomBit = 0;
-                        noise.sampleValue = 0;
+            }
 
-                    } else {
+        }
 
-                        // Find sample value:
-                        noise.randomBit = 1;
-                        if (noise.isEnabled && noise.lengthCounter > 0) {
-                            noise.sampleValue = noise.masterVolume;
-                        } else {
-                            noise.sampleValue = 0;
-                        }
+    }
 
-                    }
+    // Runs the noise channel's timer, adding to its own sample
+    // sum for each cycle.
+    private void clockNoise(int nCycles) {
 
-                    noise.progTimerCount += noise.progTimerMax;
+        int acc_c = nCycles;
+        while (acc_c > 0) {
 
-                }
+            if (noise.progTimerCount - acc_c > 0 || noise.progTimerMax <= 0) {
 
-                noise.accValue += noise.sampleValue;
-                noise.accCount++;
+                // Do all cycles at once:
+                noise.progTimerCount -= acc_c;
+                noise.accCount += acc_c;
+                noise.accValue += acc_c * noise.sampleValue;
+                break;
 
             }
-        }
 
+            if (noise.progTimerCount > 0) {
 
-        // Frame IRQ handling:
-        if (frameIrqEnabled && frameIrqActive) {
-            nes.cpu.requestIrq(CPU.IRQ_NORMAL);
-        }
+                // Fast-forward over whole timer periods:
+                int steps = (acc_c - noise.progTimerCount + 1) / noise.progTimerMax;
+                if (steps >= 2) {
 
-        // Clock frame counter at double CPU speed:
-        masterFrameCounter += (nCycles << 1);
-        if (masterFrameCounter >= frameTime) {
+                    int c = noise.progTimerCount - 1 + steps * noise.progTimerMax;
+                    int vol = (noise.isEnabled && noise.lengthCounter > 0) ? noise.masterVolume : 0;
+                    noise.accValue += (noise.progTimerCount - 1) * noise.sampleValue;
+                    noise.accValue += (long) noise.progTimerMax * vol * noise.stepShiftReg(steps);
+                    noise.accCount += c;
+                    noise.sampleValue = noise.randomBit * vol;
+                    noise.progTimerCount = 1;
+                    acc_c -= c;
+                    continue;
 
-            // 240Hz tick:
-            masterFrameCounter -= frameTime;
-            frameCounterTick();
+                }
 
+            }
 
-        }
+            // Step up to and including the cycle the timer runs out:
+            int c = Math.max(1, noise.progTimerCount);
+            noise.progTimerCount -= c;
+            noise.accCount += c;
+            noise.accValue += (c - 1) * noise.sampleValue;
+            acc_c -= c;
 
+            // Update noise shift register:
+            noise.shiftReg <<= 1;
+            noise.tmp = (((noise.shiftReg << (noise.randomMode == 0 ? 1 : 6)) ^ noise.shiftReg) & 0x8000);
+            if (noise.tmp != 0) {
 
-        // Accumulate sample value:
-        accSample(nCycles);
+                // Sample value must be 0.
+                noise.shiftReg |= 0x01;
+                noise.randomBit = 0;
+                noise.sampleValue = 0;
 
+            } else {
 
-        // Clock sample timer:
-        sampleTimer += nCycles << 10;
-        if (sampleTimer >= sampleTimerMax) {
+                // Find sample value:
+                noise.randomBit = 1;
+                if (noise.isEnabled && noise.lengthCounter > 0) {
+                    noise.sampleValue = noise.masterVolume;
+                } else {
+                    noise.sampleValue = 0;
+                }
+
+            }
 
-            // Sample channels:
-            sample();
-            sampleTimer -= sampleTimerMax;
+            noise.progTimerCount += noise.progTimerMax;
+            noise.accValue += noise.sampleValue;
 
         }
 
     }
 
+    // Moves the timers on by nCycles in which none of them runs
+    // out, and no frame counter tick or sample is due.
+    private void clockQuiet(int nCycles) {
+
+        accQuiet(nCycles);
+        if (dmc.isEnabled) {
+            dmc.shiftCounter -= nCycles << 3;
+        }
+        if (triangle.progTimerMax > 0) {
+            triangle.progTimerCount -= nCycles;
+        }
+        square1.progTimerCount -= nCycles;
+        square2.progTimerCount -= nCycles;
+        clockNoise(nCycles);
+        masterFrameCounter += nCycles << 1;
+        sampleTimer += nCycles << 10;
+
+    }
+
     private void accSample(int cycles) {
 
         // Special treatment for triangle channel - need to interpolate.
@@ -542,6 +750,83 @@ public final class PAPU {
 
     }
 
+    // Adds cycles in which no timer runs out to the samples, before
+    // the timers are moved on. The interpolated triangle value
+    // changes every cycle, so it's summed over the timer counts
+    // those cycles end with.
+    private void accQuiet(int cycles) {
+
+        if (triangle.sampleCondition) {
+
+            // The timer is running, as progTimerMax is over 7:
+            int count = triangle.progTimerCount - cycles;
+            int period = triangle.progTimerMax + 1;
+            int sum = interpolationSum(count, count + cycles - 1, period);
+            triValue = Math.min(16, (count << 4) / period);
+            if (triangle.triangleCounter >= 16) {
+                sum = 16 * cycles - sum;
+                triValue = 16 - triValue;
+            }
+            smpTriangle += sum + cycles * triangle.sampleValue;
+            triValue += triangle.sampleValue;
+
+        } else {
+
+            smpTriangle += cycles * triValue;
+
+        }
+
+        smpDmc += cycles * dmc.sample;
+        smpSquare1 += cycles * square1.sampleValue;
+        smpSquare2 += cycles * square2.sampleValue;
+        accCount += cycles;
+
+    }
+
+    // Sum of the triangle interpolation, min(16, count * 16 / period),
+    // over counts from first to last, with first at least 1.
+    private static int interpolationSum(int first, int last, int period) {
+
+        int sum = 0;
+        if (last >= period) {
+            int from = Math.max(first, period);
+            sum += 16 * (last - from + 1);
+            last = period - 1;
+        }
+        if (last >= first) {
+            sum += (int) (floorSum(last + 1, period, 16, 0) - floorSum(first, period, 16, 0));
+        }
+        return sum;
+
+    }
+
+    // Sum of (a * i + b) / m for i from 0 to n - 1, with a and b not
+    // negative and m positive.
+    private static long floorSum(long n, long m, long a, long b) {
+
+        long sum = 0;
+        while (true) {
+            if (a >= m) {
+                sum += n * (n - 1) / 2 * (a / m);
+                a %= m;
+            }
+            if (b >= m) {
+                sum += n * (b / m);
+                b %= m;
+            }
+            long top = a * n + b;
+            if (top < m) {
+                return sum;
+            }
+            n = top / m;
+            b = top % m;
+            long t = m;
+            m = a;
+            a = t;
+        }
+
+    }
+
     public void frameCounterTick() {
 
         derivedFrameCounter++;
@@ -616,6 +901,36 @@ public final class PAPU {
         noise.accValue = smpNoise >> 4;
         noise.accCount = 1;
 
+        mix();
+        // Remove DC from left channel:
+        smpDiffL = sampleValueL - prevSampleL;
+        prevSampleL += smpDiffL;
+        smpAccumL += smpDiffL - (smpAccumL >> 10);
+        sampleValueL = smpAccumL;
+
+        if (stereo) {
+
+            // Remove DC from right channel:
+            smpDiffR = sampleValueR - prevSampleR;
+            prevSampleR += smpDiffR;
+            smpAccumR += smpDiffR - (smpAccumR >> 10);
+            sampleValueR = smpAccumR;
+
+        }
+        writeSample();
+
+        // Reset sampled values:
+        smpSquare1 = 0;
+        smpSquare2 = 0;
+        smpTriangle = 0;
+        smpDmc = 0;
+
+    }
+
+    // Mixes the channel values in smpSquare1 etc. into
+    // sampleValueL and sampleValueR.
+    private void mix() {
+
         if (stereo) {
 
             // Stereo sound.
@@ -658,19 +973,12 @@ public final class PAPU {
 
         }
 
-        // Remove DC from left channel:
-        smpDiffL = sampleValueL - prevSampleL;
-        prevSampleL += smpDiffL;
-        smpAccumL += smpDiffL - (smpAccumL >> 10);
-        sampleValueL = smpAccumL;
+    }
 
-        if (stereo) {
+    // Writes sampleValueL and sampleValueR to the buffer.
+    private void writeSample() {
 
-            // Remove DC from right channel:
-            smpDiffR = sampleValueR - prevSampleR;
-            prevSampleR += smpDiffR;
-            smpAccumR += smpDiffR - (smpAccumR >> 10);
-            sampleValueR = smpAccumR;
+        if (stereo) {
 
             // Write:
             if (bufferIndex + 4 < sampleBuffer.length) {
@@ -694,11 +1002,58 @@ public final class PAPU {
             }
 
         }
-        // Reset sampled values:
-        smpSquare1 = 0;
-        smpSquare2 = 0;
-        smpTriangle = 0;
-        smpDmc = 0;
+
+    }
+
+    // Adds a step to the blip buffers if the mixed output of
+    // the channels has changed.
+    private void updateLevel() {
+
+        if (square1.sampleValue == blipSquare1 && square2.sampleValue == blipSquare2 &&
+                triangle.sampleValue == blipTriangle && noise.sampleValue == blipNoise &&
+                dmc.sample == blipDmc) {
+            return;
+        }
+        blipSquare1 = square1.sampleValue;
+        blipSquare2 = square2.sampleValue;
+        blipTriangle = triangle.sampleValue;
+        blipNoise = noise.sampleValue;
+        blipDmc = dmc.sample;
+
+        smpSquare1 = square1.sampleValue << 4;
+        smpSquare2 = square2.sampleValue << 4;
+        smpTriangle = triangle.sampleValue;
+        smpNoise = noise.sampleValue << 4;
+        smpDmc = dmc.sample << 4;
+        mix();
+
+        if (sampleValueL != blipLevelL || (stereo && sampleValueR != blipLevelR)) {
+
+            int phase = (sampleTimer * BLIP_PHASES) / sampleTimerMax;
+            blipL.impulse(blipPos, phase, sampleValueL - blipLevelL);
+            blipLevelL = sampleValueL;
+            if (stereo) {
+                blipR.impulse(blipPos, phase, sampleValueR - blipLevelR);
+                blipLevelR = sampleValueR;
+            }
+
+        }
+
+    }
+
+    // Reads the samples taken so far out of the blip buffers.
+    private void readBlip() {
+
+        blipL.read(ismpbuffer, 0, blipPos);
+        if (stereo) {
+            blipR.read(ismpbuffer, bufferSize, blipPos);
+        }
+        for (int i = 0; i < blipPos; i++) {
+            sampleValueL = ismpbuffer[i];
+            sampleValueR = ismpbuffer[bufferSize + i];
+            writeSample();
+        }
+        blipPos = 0;
 
     }
 
@@ -767,6 +1122,17 @@ public final class PAPU {
         frameIrqEnabled = false;
         frameIrqCounterMax = 4;
 
+        bandLimited = nes.bandLimitedSound;
+        blipL.clear();
+        blipR.clear();
+        blipPos = 0;
+        blipLevelL = 0;
+        blipLevelR = 0;
+        blipSquare1 = -1;
+
+        clock = sched.clock;
+        scheduleNext();
+
         channelEnableValue = 0xFF;
         b1 = 0;
         b2 = 0;
@@ -808,10 +1174,10 @@ public final class PAPU {
         }
 
         sampleRate = rate;
-        sampleTimerMax = (int) ((1024.0 * Globals.CPU_FREQ_NTSC * Globals.preferredFrameRate) /
+        sampleTimerMax = (int) ((1024.0 * Globals.CPU_FREQ_NTSC * nes.preferredFrameRate) /
                 (sampleRate * 60.0d));
 
-        frameTime = (int) ((14915.0 * (double) Globals.preferredFrameRate) / 60.0d);
+        frameTime = (int) ((14915.0 * (double) nes.preferredFrameRate) / 60.0d);
 
         sampleTimer = 0;
         bufferIndex = 0;
@@ -909,6 +1275,9 @@ public final class PAPU {
         stereoPosRNoise = masterVolume - stereoPosLNoise;
         stereoPosRDMC = masterVolume - stereoPosLDMC;
 
+        // Mix the band-limited output again:
+        blipSquare1 = -1;
+
     }
 
     public SourceDataLine getLine() {
@@ -89,9 +89,23 @@ public class PPU {
     public int spr0HitX;	// Sprite #0 hit X coordinate
     public int spr0HitY;	// Sprite #0 hit Y coordinate
     boolean hitSpr0;
-
-    // Tiles:
-    public Tile[] ptTile;
+    // One bit per sprite: the sprites at each Y coordinate, and
+    // those behind the background. Kept up to date by
+    // spriteRamWriteUpdate(), so that each scanline only looks
+    // at the sprites on it:
+    long[] spritesAtY;
+    long bgPriorityMask;
+
+    // Tiles, decoded from VRAM (see Tile):
+    public int[] ptTile;
+    // Pattern table windows. Each 1kB (64 tiles) of 0x0000-0x1FFF
+    // takes its bytes from chrData and its decoded tiles from
+    // chrTiles, starting at chrOffset in bytes (half that in tile
+    // rows). Mappers point them at CHR-ROM banks; otherwise they
+    // point at VRAM and ptTile.
+    short[][] chrData = new short[8][];
+    int[][] chrTiles = new int[8][];
+    int[] chrOffset = new int[8];
     // Name table data:
     int[] ntable1 = new int[4];
     NameTable[] nameTable;
@@ -112,19 +126,33 @@ public class PPU {
     int address, b1, b2;
     // Variables used when rendering:
     int[] attrib = new int[32];
-    int[] bgbuffer = new int[256 * 240];
-    int[] pixrendered = new int[256 * 240];
+    // The background of each scanline as image palette indices,
+    // transparent where the low two bits are 0, and which
+    // scanlines of this frame it has been rendered for:
+    byte[] bgbuffer = new byte[256 * 240];
+    boolean[] bgRendered = new boolean[240];
+    // The sprites of the scanline being composed, as sprite
+    // palette indices plus SPR_BEHIND for those behind the
+    // background, 0 where there are none:
+    byte[] sprLine = new byte[256];
+    static final int SPR_BEHIND = 16;
+    // Color of pixels with nothing drawn on them this frame:
+    int bgColor;
+    // The color of a pixel by its sprLine and bgbuffer entries,
+    // at (sprite << 4) | background. Set up again whenever the
+    // palettes or background color change:
+    int[] pixelColor = new int[32 * 16];
+    boolean pixelColorValid;
     int[] spr0dummybuffer = new int[256 * 240];
     int[] dummyPixPriTable = new int[256 * 240];
     int[] oldFrame = new int[256 * 240];
-    int[] buffer;
-    int[] tpix;
+    int[] buffer = new int[256 * 240];
     boolean[] scanlineChanged = new boolean[240];
     boolean requestRenderAll = false;
+    boolean trackScanlineChanges = false;
     boolean validTileData;
     int att;
-    Tile[] scantile = new Tile[32];
-    Tile t;
+    int[] scantile = new int[32];
     // These are temporary variables used in rendering and sound procedures.
     // Their states outside of those procedures can be ignored.
     int curNt;
@@ -134,10 +162,16 @@ public class PPU {
     int tile;
     int col;
     int baseTile;
-    int tscanoffset;
     int srcy1, srcy2;
     int bufferSize, available, scale;
+    // Dots the CPU has run that the PPU hasn't caught up with yet:
     public int cycles = 0;
+    // Dots from the last catch-up until the next event (sprite 0
+    // hit, VBlank NMI or end of scanline):
+    public int eventDots = 0;
+    // Scheduler time the PPU has been run up to:
+    long clock;
+    Scheduler sched;
 
     public PPU(NES nes) {
         this.nes = nes;
@@ -148,6 +182,8 @@ public class PPU {
         // Get the memory:
         ppuMem = nes.getPpuMemory();
         sprMem = nes.getSprMemory();
+        sched = nes.getScheduler();
+        resync();
 
         updateControlReg1(0);
         updateControlReg2(0);
@@ -164,14 +200,15 @@ public class PPU {
         vertFlip = new boolean[64];
         horiFlip = new boolean[64];
         bgPriority = new boolean[64];
+        spritesAtY = new long[256];
+        spritesAtY[0] = -1L;
+        bgPriorityMask = 0;
 
         // Create pattern table tile buffers:
         if (ptTile == null) {
-            ptTile = new Tile[512];
-            for (int i = 0; i < 512; i++) {
-                ptTile[i] = new Tile();
-            }
+            ptTile = new int[512 * 8];
         }
+        unmapChr();
 
         // Create nametable buffers:
         nameTable = new NameTable[4];
@@ -299,39 +336,105 @@ public class PPU {
 
     }
 
-    // Emulates PPU cycles
+    // Emulates PPU cycles. Dots with nothing to do but count
+    // are skipped in one step.
     public void emulateCycles() {
 
-        //int n = (!requestEndFrame && curX+cycles<341 && (scanline-20 < spr0HitY || scanline-22 > spr0HitY))?cycles:1;
-        for (; cycles > 0; cycles--) {
+        int n;
+        while (cycles > 0) {
 
-            if (scanline - 21 == spr0HitY) {
+            n = dotsToNextEvent() - 1;
+            if (n >= cycles) {
+                skipDots(cycles);
+                break;
+            }
+            skipDots(n);
+            emulateDot();
 
-                if ((curX == spr0HitX) && (f_spVisibility == 1)) {
-                    // Set sprite 0 hit flag:
-                    setStatusFlag(STATUS_SPRITE0HIT, true);
-                }
+        }
 
-            }
+        eventDots = dotsToNextEvent();
 
-            if (requestEndFrame) {
-                nmiCounter--;
-                if (nmiCounter == 0) {
-                    requestEndFrame = false;
-                    startVBlank();
-                }
-            }
+    }
+
+    // Runs the PPU up to the scheduler's clock, and has the CPU
+    // stop again at its next event. The CPU calls this when the
+    // PPU's deadline is reached, and before it accesses the PPU
+    // or the mapper.
+    public void catchUp() {
+
+        cycles += (int) (sched.clock - clock) * 3;
+        clock = sched.clock;
+        emulateCycles();
+        sched.schedule(Scheduler.PPU, clock + (eventDots + 2) / 3);
+
+    }
+
+    // Drops any dots not caught up with, and has the CPU stop
+    // right away so the PPU can find its next event.
+    private void resync() {
+
+        cycles = 0;
+        clock = sched.clock;
+        sched.schedule(Scheduler.PPU, clock);
+
+    }
 
-            curX++;
-            if (curX == 341) {
+    // Returns how many dots from now the next event happens in,
+    // counting the dot it happens on.
+    private int dotsToNextEvent() {
 
-                curX = 0;
-                endScanline();
+        int n = 341 - curX;
+        if (requestEndFrame && nmiCounter < n) {
+            n = nmiCounter;
+        }
+        if (scanline - 21 == spr0HitY && f_spVisibility == 1 && curX <= spr0HitX && spr0HitX - curX + 1 < n) {
+            n = spr0HitX - curX + 1;
+        }
+        return n;
+
+    }
+
+    // Runs dots that have no event on them.
+    private void skipDots(int n) {
+
+        curX += n;
+        if (requestEndFrame) {
+            nmiCounter -= n;
+        }
+        cycles -= n;
+
+    }
 
+    // Emulates a single dot.
+    private void emulateDot() {
+
+        if (scanline - 21 == spr0HitY) {
+
+            if ((curX == spr0HitX) && (f_spVisibility == 1)) {
+                // Set sprite 0 hit flag:
+                setStatusFlag(STATUS_SPRITE0HIT, true);
             }
 
         }
 
+        if (requestEndFrame) {
+            nmiCounter--;
+            if (nmiCounter == 0) {
+                requestEndFrame = false;
+                startVBlank();
+            }
+        }
+
+        curX++;
+        if (curX == 341) {
+
+            curX = 0;
+            endScanline();
+
+        }
+        cycles--;
+
     }
 
     public void startVBlank() {
@@ -339,7 +442,7 @@ public class PPU {
         // Start VBlank period:
         // Do VBlank.
         if (Globals.debug) {
-            Globals.println("VBlank occurs!");
+            nes.getGui().println("VBlank occurs!");
         }
 
         // Do NMI:
@@ -347,13 +450,22 @@ public class PPU {
 
         // Make sure everything is rendered:
         if (lastRenderedScanline < 239) {
-            renderFramePartially(nes.gui.getScreenView().getBuffer(), lastRenderedScanline + 1, 240 - lastRenderedScanline);
+            renderFramePartially(buffer, lastRenderedScanline + 1, 240 - lastRenderedScanline);
         }
 
         endFrame();
 
-        // Notify image buffer:
-        nes.getGui().getScreenView().imageReady(false);
+        // Bring the sound up to the end of the frame:
+        nes.papu.endFrame();
+
+        // Notify GUI that the frame buffer is complete:
+        nes.getGui().imageReady(false);
+
+        // Hand control back if the CPU is stepping one frame.
+        // The NMI stays pending until the next step:
+        if (nes.cpu.stepFrame) {
+            nes.cpu.stopRunning = true;
+        }
 
         // Reset scanline counter:
         lastRenderedScanline = -1;
@@ -404,7 +516,7 @@ public class PPU {
 
                 if (f_bgVisibility == 1) {
                     // Render dummy scanline:
-                    renderBgScanline(buffer, 0);
+                    renderBgScanline(0);
                 }
 
             }
@@ -430,7 +542,7 @@ public class PPU {
                     // update scroll:
                     cntHT = regHT;
                     cntH = regH;
-                    renderBgScanline(bgbuffer, scanline + 1 - 21);
+                    renderBgScanline(scanline + 1 - 21);
                 }
                 scanlineAlreadyRendered = false;
 
@@ -472,10 +584,8 @@ public class PPU {
 
     public void startFrame() {
 
-        int[] buffer = nes.getGui().getScreenView().getBuffer();
-
         // Set background color:
-        int bgColor = 0;
+        bgColor = 0;
 
         if (f_dispType == 0) {
 
@@ -519,19 +629,15 @@ public class PPU {
 
         }
 
-        for (int i = 0; i < buffer.length; i++) {
-            buffer[i] = bgColor;
-        }
-        for (int i = 0; i < pixrendered.length; i++) {
-            pixrendered[i] = 65;
+        for (int i = 0; i < bgRendered.length; i++) {
+            bgRendered[i] = false;
         }
+        pixelColorValid = false;
 
     }
 
     public void endFrame() {
 
-        int[] buffer = nes.getGui().getScreenView().getBuffer();
-
         // Draw spr#0 hit coordinates:
         if (showSpr0Hit) {
             // Spr 0 position:
@@ -775,7 +881,7 @@ public class PPU {
 
             // Update buffered value:
             if (vramAddress < 0x2000) {
-                vramBufferedReadValue = ppuMem.load(vramAddress);
+                vramBufferedReadValue = chrLoad(vramAddress);
             } else {
                 vramBufferedReadValue = mirroredLoad(vramAddress);
             }
@@ -840,11 +946,12 @@ public class PPU {
     // into Sprite RAM.
     public void sramDMA(short value) {
 
-        Memory cpuMem = nes.getCpuMemory();
+        // Read through the mapper, as PRG-ROM isn't in main memory:
+        MemoryMapper mmap = nes.getMemoryMapper();
         int baseAddress = value * 0x100;
         short data;
         for (int i = sramAddress; i < 256; i++) {
-            data = cpuMem.load(baseAddress + i);
+            data = mmap.load(baseAddress + i);
             sprMem.write(i, data);
             spriteRamWriteUpdate(i, data);
         }
@@ -1011,36 +1118,25 @@ public class PPU {
 
     private void renderFramePartially(int[] buffer, int startScan, int scanCount) {
 
-        if (f_spVisibility == 1 && !Globals.disableSprites) {
-            renderSpritesPartially(startScan, scanCount, true);
+        if (startScan + scanCount > 240) {
+            scanCount = 240 - startScan;
         }
 
-        if (f_bgVisibility == 1) {
-            si = startScan << 8;
-            ei = (startScan + scanCount) << 8;
-            if (ei > 0xF000) {
-                ei = 0xF000;
-            }
-            for (destIndex = si; destIndex < ei; destIndex++) {
-                if (pixrendered[destIndex] > 0xFF) {
-                    buffer[destIndex] = bgbuffer[destIndex];
-                }
-            }
+        if (!pixelColorValid) {
+            updatePixelColors();
         }
 
-        if (f_spVisibility == 1 && !Globals.disableSprites) {
-            renderSpritesPartially(startScan, scanCount, false);
+        boolean bg = f_bgVisibility == 1;
+        boolean sprites = f_spVisibility == 1 && !Globals.disableSprites;
+        for (int i = startScan; i < startScan + scanCount; i++) {
+            composeScanline(buffer, i, bg && bgRendered[i], sprites && renderSpriteLine(i));
         }
 
-        BufferView screen = nes.getGui().getScreenView();
-        if (screen.scalingEnabled() && !screen.useHWScaling() && !requestRenderAll) {
+        if (trackScanlineChanges && !requestRenderAll) {
 
             // Check which scanlines have changed, to try to
             // speed up scaling:
             int j, jmax;
-            if (startScan + scanCount > 240) {
-                scanCount = 240 - startScan;
-            }
             for (int i = startScan; i < startScan + scanCount; i++) {
                 scanlineChanged[i] = false;
                 si = i << 8;
@@ -1061,7 +1157,54 @@ public class PPU {
 
     }
 
-    private void renderBgScanline(int[] buffer, int scan) {
+    // Writes a scanline of the frame in one pass, from its
+    // background in bgbuffer and its sprites in sprLine. The
+    // sprite line is cleared for the next one.
+    private void composeScanline(int[] buffer, int scan, boolean bg, boolean sprites) {
+
+        int i = scan << 8;
+        if (bg) {
+            for (int x = 0; x < 256; x++) {
+                buffer[i] = pixelColor[(sprLine[x] << 4) | bgbuffer[i]];
+                i++;
+            }
+        } else {
+            for (int x = 0; x < 256; x++) {
+                buffer[i++] = pixelColor[sprLine[x] << 4];
+            }
+        }
+
+        if (sprites) {
+            for (int x = 0; x < 256; x++) {
+                sprLine[x] = 0;
+            }
+        }
+
+    }
+
+    // Works out the color of each combination of sprite and
+    // background pixel. A sprite pixel is shown unless it is
+    // behind an opaque background pixel.
+    private void updatePixelColors() {
+
+        int c;
+        for (int s = 0; s < 32; s++) {
+            for (int b = 0; b < 16; b++) {
+                if ((s & 0xF) != 0 && (s < SPR_BEHIND || (b & 3) == 0)) {
+                    c = sprPalette[s & 0xF];
+                } else if ((b & 3) != 0) {
+                    c = imgPalette[b];
+                } else {
+                    c = bgColor;
+                }
+                pixelColor[(s << 4) | b] = c;
+            }
+        }
+        pixelColorValid = true;
+
+    }
+
+    private void renderBgScanline(int scan) {
 
         baseTile = (regS == 0 ? 0 : 256);
         destIndex = (scan << 8) - regFH;
@@ -1073,7 +1216,7 @@ public class PPU {
 
         if (scan < 240 && (scan - cntFV) >= 0) {
 
-            tscanoffset = cntFV << 3;
+            int row;
             y = scan - cntFV;
             for (tile = 0; tile < 32; tile++) {
 
@@ -1082,15 +1225,13 @@ public class PPU {
                     // Fetch tile & attrib data:
                     if (validTileData) {
                         // Get data from array:
-                        t = scantile[tile];
-                        tpix = t.pix;
+                        row = tileRow(scantile[tile], cntFV);
                         att = attrib[tile];
                     } else {
                         // Fetch data:
-                        t = ptTile[baseTile + nameTable[curNt].getTileIndex(cntHT, cntVT)];
-                        tpix = t.pix;
+                        scantile[tile] = baseTile + nameTable[curNt].getTileIndex(cntHT, cntVT);
+                        row = tileRow(scantile[tile], cntFV);
                         att = nameTable[curNt].getAttrib(cntHT, cntVT);
-                        scantile[tile] = t;
                         attrib[tile] = att;
                     }
 
@@ -1101,22 +1242,12 @@ public class PPU {
                         if (x < 0) {
                             destIndex -= x;
                             sx = -x;
+                            row >>= sx << 1;
                         }
-                        if (t.opaque[cntFV]) {
-                            for (; sx < 8; sx++) {
-                                buffer[destIndex] = imgPalette[tpix[tscanoffset + sx] + att];
-                                pixrendered[destIndex] |= 256;
-                                destIndex++;
-                            }
-                        } else {
-                            for (; sx < 8; sx++) {
-                                col = tpix[tscanoffset + sx];
-                                if (col != 0) {
-                                    buffer[destIndex] = imgPalette[col + att];
-                                    pixrendered[destIndex] |= 256;
-                                }
-                                destIndex++;
-                            }
+                        for (; sx < 8; sx++) {
+                            bgbuffer[destIndex] = (byte) ((row & 3) + att);
+                            row >>= 2;
+                            destIndex++;
                         }
                     }
 
@@ -1134,6 +1265,12 @@ public class PPU {
 
             }
 
+            // Fine scrolling leaves the last pixels uncovered:
+            for (x = 256 - regFH; x < 256; x++) {
+                bgbuffer[destIndex++] = 0;
+            }
+            bgRendered[scan] = true;
+
             // Tile data for one row should now have been fetched,
             // so the data in the array is valid.
             validTileData = true;
@@ -1161,72 +1298,68 @@ public class PPU {
 
     }
 
-    private void renderSpritesPartially(int startscan, int scancount, boolean bgPri) {
-
-        buffer = nes.getGui().getScreenView().getBuffer();
-        if (f_spVisibility == 1) {
-
-            int sprT1, sprT2;
-
-            for (int i = 0; i < 64; i++) {
-                if (bgPriority[i] == bgPri && sprX[i] >= 0 && sprX[i] < 256 && sprY[i] + 8 >= startscan && sprY[i] < startscan + scancount) {
-                    // Show sprite.
-                    if (f_spriteSize == 0) {
-                        // 8x8 sprites
-
-                        srcy1 = 0;
-                        srcy2 = 8;
-
-                        if (sprY[i] < startscan) {
-                            srcy1 = startscan - sprY[i] - 1;
-                        }
-
-                        if (sprY[i] + 8 > startscan + scancount) {
-                            srcy2 = startscan + scancount - sprY[i] + 1;
-                        }
+    // Draws the sprites on a scanline into sprLine, lower
+    // numbered sprites in front. Returns false if there are none.
+    private boolean renderSpriteLine(int scan) {
 
-                        if (f_spPatternTable == 0) {
-                            ptTile[sprTile[i]].render(0, srcy1, 8, srcy2, sprX[i], sprY[i] + 1, buffer, sprCol[i], sprPalette, horiFlip[i], vertFlip[i], i, pixrendered);
-                        } else {
-                            ptTile[sprTile[i] + 256].render(0, srcy1, 8, srcy2, sprX[i], sprY[i] + 1, buffer, sprCol[i], sprPalette, horiFlip[i], vertFlip[i], i, pixrendered);
-                        }
-                    } else {
-                        // 8x16 sprites
-                        int top = sprTile[i];
-                        if ((top & 1) != 0) {
-                            top = sprTile[i] - 1 + 256;
-                        }
-
-                        srcy1 = 0;
-                        srcy2 = 8;
-
-                        if (sprY[i] < startscan) {
-                            srcy1 = startscan - sprY[i] - 1;
-                        }
-
-                        if (sprY[i] + 8 > startscan + scancount) {
-                            srcy2 = startscan + scancount - sprY[i];
-                        }
-
-                        ptTile[top + (vertFlip[i] ? 1 : 0)].render(0, srcy1, 8, srcy2, sprX[i], sprY[i] + 1, buffer, sprCol[i], sprPalette, horiFlip[i], vertFlip[i], i, pixrendered);
-
-                        srcy1 = 0;
-                        srcy2 = 8;
+        // A sprite's rows start on the line below its Y:
+        int h = (f_spriteSize == 0 ? 8 : 16);
+        long sprites = 0;
+        for (int sy = Math.max(scan - h, 0); sy < scan; sy++) {
+            sprites |= spritesAtY[sy];
+        }
+        if (sprites == 0) {
+            return false;
+        }
 
-                        if (sprY[i] + 8 < startscan) {
-                            srcy1 = startscan - (sprY[i] + 8 + 1);
-                        }
+        if (nes.spriteLimit) {
+            // Only the first 8 are shown, like the PPU's
+            // sprite evaluation:
+            long shown = 0, first;
+            for (int n = 0; n < 8 && sprites != 0; n++) {
+                first = sprites & -sprites;
+                shown |= first;
+                sprites ^= first;
+            }
+            sprites = shown;
+        }
 
-                        if (sprY[i] + 16 > startscan + scancount) {
-                            srcy2 = startscan + scancount - (sprY[i] + 8);
-                        }
+        int i, row, tile, pal, x, end, col, pix;
+        while (sprites != 0) {
+            i = Long.numberOfTrailingZeros(sprites);
+            sprites &= sprites - 1;
 
-                        ptTile[top + (vertFlip[i] ? 0 : 1)].render(0, srcy1, 8, srcy2, sprX[i], sprY[i] + 1 + 8, buffer, sprCol[i], sprPalette, horiFlip[i], vertFlip[i], i, pixrendered);
+            row = scan - sprY[i] - 1;
+            if (vertFlip[i]) {
+                row = h - 1 - row;
+            }
+            if (f_spriteSize == 0) {
+                tile = sprTile[i] + (f_spPatternTable == 0 ? 0 : 256);
+            } else {
+                // 8x16 sprites:
+                tile = sprTile[i] + ((sprTile[i] & 1) != 0 ? 255 : 0);
+                if (row >= 8) {
+                    tile++;
+                    row -= 8;
+                }
+            }
+            pix = tileRow(tile, row);
+            if (horiFlip[i]) {
+                pix >>>= 16;
+            }
 
-                    }
+            pal = sprCol[i] | ((int) (bgPriorityMask >>> i) & 1) << 4;
+            x = sprX[i];
+            end = Math.min(x + 8, 256);
+            for (; x < end; x++) {
+                col = pix & 3;
+                if (col != 0 && sprLine[x] == 0) {
+                    sprLine[x] = (byte) (pal + col);
                 }
+                pix >>= 2;
             }
         }
+        return true;
 
     }
 
@@ -1241,7 +1374,7 @@ public class PPU {
         int bufferIndex;
         int col;
         boolean bgPri;
-        Tile t;
+        int t, pix;
 
         x = sprX[0];
         y = sprY[0] + 1;
@@ -1256,7 +1389,7 @@ public class PPU {
 
                 // Sprite is in range.
                 // Draw scanline:
-                t = ptTile[sprTile[0] + tIndexAdd];
+                t = sprTile[0] + tIndexAdd;
                 col = sprCol[0];
                 bgPri = bgPriority[0];
 
@@ -1265,14 +1398,14 @@ public class PPU {
                 } else {
                     toffset = scan - y;
                 }
-                toffset *= 8;
+                pix = tileRow(t, toffset);
 
                 bufferIndex = scan * 256 + x;
                 if (horiFlip[0]) {
                     for (int i = 7; i >= 0; i--) {
                         if (x >= 0 && x < 256) {
-                            if (bufferIndex >= 0 && bufferIndex < 61440 && pixrendered[bufferIndex] != 0) {
-                                if (t.pix[toffset + i] != 0) {
+                            if (bufferIndex >= 0 && bufferIndex < 61440) {
+                                if (((pix >> (i << 1)) & 3) != 0) {
                                     spr0HitX = bufferIndex % 256;
                                     spr0HitY = scan;
                                     return true;
@@ -1287,8 +1420,8 @@ public class PPU {
 
                     for (int i = 0; i < 8; i++) {
                         if (x >= 0 && x < 256) {
-                            if (bufferIndex >= 0 && bufferIndex < 61440 && pixrendered[bufferIndex] != 0) {
-                                if (t.pix[toffset + i] != 0) {
+                            if (bufferIndex >= 0 && bufferIndex < 61440) {
+                                if (((pix >> (i << 1)) & 3) != 0) {
                                     spr0HitX = bufferIndex % 256;
                                     spr0HitY = scan;
                                     return true;
@@ -1322,17 +1455,17 @@ public class PPU {
 
                 if (toffset < 8) {
                     // first half of sprite.
-                    t = ptTile[sprTile[0] + (vertFlip[0] ? 1 : 0) + ((sprTile[0] & 1) != 0 ? 255 : 0)];
+                    t = sprTile[0] + (vertFlip[0] ? 1 : 0) + ((sprTile[0] & 1) != 0 ? 255 : 0);
                 } else {
                     // second half of sprite.
-                    t = ptTile[sprTile[0] + (vertFlip[0] ? 0 : 1) + ((sprTile[0] & 1) != 0 ? 255 : 0)];
+                    t = sprTile[0] + (vertFlip[0] ? 0 : 1) + ((sprTile[0] & 1) != 0 ? 255 : 0);
                     if (vertFlip[0]) {
                         toffset = 15 - toffset;
                     } else {
                         toffset -= 8;
                     }
                 }
-                toffset *= 8;
+                pix = tileRow(t, toffset);
                 col = sprCol[0];
                 bgPri = bgPriority[0];
 
@@ -1341,8 +1474,8 @@ public class PPU {
 
                     for (int i = 7; i >= 0; i--) {
                         if (x >= 0 && x < 256) {
-                            if (bufferIndex >= 0 && bufferIndex < 61440 && pixrendered[bufferIndex] != 0) {
-                                if (t.pix[toffset + i] != 0) {
+                            if (bufferIndex >= 0 && bufferIndex < 61440) {
+                                if (((pix >> (i << 1)) & 3) != 0) {
                                     spr0HitX = bufferIndex % 256;
                                     spr0HitY = scan;
                                     return true;
@@ -1357,8 +1490,8 @@ public class PPU {
 
                     for (int i = 0; i < 8; i++) {
                         if (x >= 0 && x < 256) {
-                            if (bufferIndex >= 0 && bufferIndex < 61440 && pixrendered[bufferIndex] != 0) {
-                                if (t.pix[toffset + i] != 0) {
+                            if (bufferIndex >= 0 && bufferIndex < 61440) {
+                                if (((pix >> (i << 1)) & 3) != 0) {
                                     spr0HitX = bufferIndex % 256;
                                     spr0HitY = scan;
                                     return true;
@@ -1390,7 +1523,7 @@ public class PPU {
         for (int j = 0; j < 2; j++) {
             for (int y = 0; y < 16; y++) {
                 for (int x = 0; x < 16; x++) {
-                    ptTile[tIndex].renderSimple(j * 128 + x * 8, y * 8, buffer, 0, sprPalette);
+                    Tile.renderSimple(chrTiles[tIndex >> 6], tileAt(tIndex), j * 128 + x * 8, y * 8, buffer, 0, sprPalette);
                     tIndex++;
                 }
             }
@@ -1427,8 +1560,9 @@ public class PPU {
                 // Render nametable:
                 for (int ty = 0; ty < 30; ty++) {
                     for (int tx = 0; tx < 32; tx++) {
-                        //ptTile[baseTile+nameTable[nt].getTileIndex(tx,ty)].render(0,0,4,4,x+tx*4,y+ty*4,buffer,nameTable[nt].getAttrib(tx,ty),imgPalette,false,false,0,dummyPixPriTable);
-                        ptTile[baseTile + nameTable[nt].getTileIndex(tx, ty)].renderSmall(x + tx * 4, y + ty * 4, buffer, nameTable[nt].getAttrib(tx, ty), imgPalette);
+                        //getTile(baseTile+nameTable[nt].getTileIndex(tx,ty)).render(0,0,4,4,x+tx*4,y+ty*4,buffer,nameTable[nt].getAttrib(tx,ty),imgPalette,false,false,0,dummyPixPriTable);
+                        int index = baseTile + nameTable[nt].getTileIndex(tx, ty);
+                        Tile.renderSmall(chrTiles[index >> 6], tileAt(index), x + tx * 4, y + ty * 4, buffer, nameTable[nt].getAttrib(tx, ty), imgPalette);
                     }
                 }
 
@@ -1552,42 +1686,76 @@ public class PPU {
                 sprPalette[i] = nes.palTable.getEntry(ppuMem.load(0x3f10 + i) & 32);
             }
         }
+        pixelColorValid = false;
 
     //renderPalettes();
 
     }
 
 
-    // Updates the internal pattern
-    // table buffers with this new byte.
-    public void patternWrite(int address, short value) {
-        int tileIndex = address / 16;
-        int leftOver = address % 16;
-        if (leftOver < 8) {
-            ptTile[tileIndex].setScanline(leftOver, value, ppuMem.load(address + 8));
-        } else {
-            ptTile[tileIndex].setScanline(leftOver - 8, ppuMem.load(address - 8), value);
+    // Maps size bytes of the pattern tables, from the given
+    // address, to CHR data and its tiles starting at offset.
+    // Size and offset are multiples of 1kB.
+    public void mapChr(int address, int size, short[] data, int[] tiles, int offset) {
+
+        for (int i = 0; i < size; i += 1024) {
+            int w = (address + i) >> 10;
+            chrData[w] = data;
+            chrTiles[w] = tiles;
+            chrOffset[w] = offset + i;
         }
+
     }
 
-    public void patternWrite(int address, short[] value, int offset, int length) {
+    // Maps the pattern tables back to VRAM and ptTile.
+    public void unmapChr() {
 
-        int tileIndex;
-        int leftOver;
+        for (int w = 0; w < 8; w++) {
+            chrData[w] = ppuMem.mem;
+            chrTiles[w] = ptTile;
+            chrOffset[w] = w << 10;
+        }
 
-        for (int i = 0; i < length; i++) {
+    }
 
-            tileIndex = (address + i) >> 4;
-            leftOver = (address + i) % 16;
+    // Returns where pattern table tile 0-511 starts
+    // in chrTiles[index >> 6].
+    private int tileAt(int index) {
+        return (chrOffset[index >> 6] >> 1) + ((index & 63) << 3);
+    }
 
-            if (leftOver < 8) {
-                ptTile[tileIndex].setScanline(leftOver, value[offset + i], ppuMem.load(address + 8 + i));
-            } else {
-                ptTile[tileIndex].setScanline(leftOver - 8, ppuMem.load(address - 8 + i), value[offset + i]);
-            }
+    // Returns row 0-7 of pattern table tile 0-511, decoded.
+    private int tileRow(int index, int row) {
+        return chrTiles[index >> 6][tileAt(index) + row];
+    }
 
+    // Reads a pattern table byte.
+    private short chrLoad(int address) {
+        int w = address >> 10;
+        return chrData[w][chrOffset[w] + (address & 0x3FF)];
+    }
+
+    // Updates the internal pattern
+    // table buffers with this new byte.
+    public void patternWrite(int address, short value) {
+        if (chrTiles[address >> 10] != ptTile) {
+            // CHR-ROM can't be written to.
+            return;
+        }
+        int tileIndex = address / 16;
+        int leftOver = address % 16;
+        if (leftOver < 8) {
+            ptTile[(tileIndex << 3) + leftOver] = Tile.decodeRow(value, ppuMem.load(address + 8));
+        } else {
+            ptTile[(tileIndex << 3) + leftOver - 8] = Tile.decodeRow(ppuMem.load(address - 8), value);
         }
+    }
 
+    // Returns the frame buffer the PPU renders into.
+    // This is owned by the PPU unless a view has
+    // supplied its own raster.
+    public int[] getBuffer() {
+        return buffer;
     }
 
     public void invalidateFrameCache() {
@@ -1633,7 +1801,9 @@ public class PPU {
         if (address % 4 == 0) {
 
             // Y coordinate
+            spritesAtY[sprY[tIndex]] &= ~(1L << tIndex);
             sprY[tIndex] = value;
+            spritesAtY[value] |= 1L << tIndex;
 
         } else if (address % 4 == 1) {
 
@@ -1646,6 +1816,8 @@ public class PPU {
             vertFlip[tIndex] = ((value & 0x80) != 0);
             horiFlip[tIndex] = ((value & 0x40) != 0);
             bgPriority[tIndex] = ((value & 0x20) != 0);
+            bgPriorityMask &= ~(1L << tIndex);
+            bgPriorityMask |= (long) ((value >> 5) & 1) << tIndex;
             sprCol[tIndex] = (value & 3) << 2;
 
         } else if (address % 4 == 3) {
@@ -1707,7 +1879,8 @@ public class PPU {
     public void stateLoad(ByteBuffer buf) {
 
         // Check version:
-        if (buf.readByte() == 1) {
+        int version = buf.readByte();
+        if (version >= 1 && version <= 3) {
 
             // Counters:
             cntFV = buf.readInt();
@@ -1768,11 +1941,19 @@ public class PPU {
 
 
             // Stuff used during rendering:
-            for (int i = 0; i < bgbuffer.length; i++) {
-                bgbuffer[i] = buf.readByte();
-            }
-            for (int i = 0; i < pixrendered.length; i++) {
-                pixrendered[i] = buf.readByte();
+            if (version == 1) {
+                // Skip the old RGB background and priority buffers:
+                buf.move(2 * 256 * 240);
+                for (int i = 0; i < bgRendered.length; i++) {
+                    bgRendered[i] = false;
+                }
+            } else {
+                for (int i = 0; i < bgbuffer.length; i++) {
+                    bgbuffer[i] = (byte) buf.readByte();
+                }
+                for (int i = 0; i < bgRendered.length; i++) {
+                    bgRendered[i] = buf.readBoolean();
+                }
             }
 
             // Name tables:
@@ -1781,10 +1962,9 @@ public class PPU {
                 nameTable[i].stateLoad(buf);
             }
 
-            // Pattern data:
-            for (int i = 0; i < ptTile.length; i++) {
-                ptTile[i].stateLoad(buf);
-            }
+            // Pattern data. Older states have the tiles at the end
+            // as well, but they can be decoded from VRAM:
+            Tile.decode(ppuMem.mem, 0, ptTile, 0, 512);
 
             // Update internally stored stuff from VRAM memory:
 			/*short[] mem = ppuMem.mem;
@@ -1800,6 +1980,9 @@ public class PPU {
                 spriteRamWriteUpdate(i, sprmem[i]);
             }
 
+            // Find the next event again:
+            resync();
+
         }
 
     }
@@ -1808,7 +1991,7 @@ public class PPU {
 
 
         // Version:
-        buf.putByte((short) 1);
+        buf.putByte((short) 3);
 
 
         // Counters:
@@ -1872,8 +2055,8 @@ public class PPU {
         for (int i = 0; i < bgbuffer.length; i++) {
             buf.putByte((short) bgbuffer[i]);
         }
-        for (int i = 0; i < pixrendered.length; i++) {
-            buf.putByte((short) pixrendered[i]);
+        for (int i = 0; i < bgRendered.length; i++) {
+            buf.putBoolean(bgRendered[i]);
         }
 
         // Name tables:
@@ -1882,10 +2065,6 @@ public class PPU {
             nameTable[i].stateSave(buf);
         }
 
-        // Pattern data:
-        for (int i = 0; i < ptTile.length; i++) {
-            ptTile[i].stateSave(buf);
-        }
 
     }
 
@@ -1899,6 +2078,7 @@ public class PPU {
         sramAddress = 0;
         curX = 0;
         scanline = 0;
+        resync();
         lastRenderedScanline = 0;
         spr0HitX = 0;
         spr0HitY = 0;
@@ -0,0 +1,106 @@
+/*
+vNES
+Copyright © 2006-2013 Open Emulation Project
+
+This program is free software: you can redistribute it and/or modify it under
+the terms of the GNU General Public License as published by the Free Software
+Foundation, either version 3 of the License, or (at your option) any later
+version.
+
+This program is distributed in the hope that it will be useful, but WITHOUT ANY
+WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS FOR A
+PARTICULAR PURPOSE.  See the GNU General Public License for more details.
+
+You should have received a copy of the GNU General Public License along with
+this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+// Page table for the CPU address space. Each of the 256 pages of
+// 256 bytes is either backed directly by an array, or has a null
+// entry and is left to the memory mapper's load/write methods.
+// The CPU looks pages up here first, so RAM and ROM accesses are
+// plain array accesses. Mappers update the entries when they
+// switch banks.
+public class PageTable {
+
+    public static final int PAGE_COUNT = 256;
+    public static final int PAGE_SIZE = 256;
+
+    // Backing array for each page, and the offset of the page in it:
+    public short[][] readPage = new short[PAGE_COUNT][];
+    public int[] readOffset = new int[PAGE_COUNT];
+    public short[][] writePage = new short[PAGE_COUNT][];
+    public int[] writeOffset = new int[PAGE_COUNT];
+    // For pages of ROM, an array of decoded instructions parallel
+    // to the backing array, which the CPU fills in as it runs the
+    // code. Null for pages that may be written, and for ROM banks
+    // no code has been fetched from yet (see loadCode()):
+    public int[][] codePage = new int[PAGE_COUNT][];
+    // For pages of ROM, the 16kB PRG-ROM bank they show, or -1:
+    public int[] romBank = new int[PAGE_COUNT];
+    ROM rom;
+
+    public PageTable() {
+        for (int i = 0; i < PAGE_COUNT; i++) {
+            romBank[i] = -1;
+        }
+    }
+
+    // Maps size bytes from the given address for reading,
+    // to data starting at offset.
+    public void mapRead(int address, int size, short[] data, int offset) {
+        for (int i = 0; i < size; i += PAGE_SIZE) {
+            int page = (address + i) >> 8;
+            readPage[page] = data;
+            readOffset[page] = offset + i;
+            codePage[page] = null;
+            romBank[page] = -1;
+        }
+    }
+
+    // Maps size bytes from the given address for reading, to a
+    // PRG-ROM bank starting at offset.
+    public void mapRom(int address, int size, ROM rom, int bank, int offset) {
+        this.rom = rom;
+        mapRead(address, size, rom.getRomBank(bank), offset);
+        for (int i = 0; i < size; i += PAGE_SIZE) {
+            int page = (address + i) >> 8;
+            codePage[page] = rom.romCode[bank];
+            romBank[page] = bank;
+        }
+    }
+
+    // Called on the first fetch of code from a page of ROM with no
+    // code array yet. Makes the one for its bank, which every page
+    // showing the bank then shares, and returns it.
+    public int[] loadCode(int page) {
+        int bank = romBank[page];
+        int[] code = rom.getRomBankCode(bank);
+        for (int i = 0; i < PAGE_COUNT; i++) {
+            if (romBank[i] == bank) {
+                codePage[i] = code;
+            }
+        }
+        return code;
+    }
+
+    // Maps size bytes from the given address for writing,
+    // to data starting at offset.
+    public void mapWrite(int address, int size, short[] data, int offset) {
+        for (int i = 0; i < size; i += PAGE_SIZE) {
+            int page = (address + i) >> 8;
+            writePage[page] = data;
+            writeOffset[page] = offset + i;
+        }
+    }
+
+    // Leaves reads from the given range to the mapper.
+    public void unmapRead(int address, int size) {
+        mapRead(address, size, null, 0);
+    }
+
+    // Leaves writes to the given range to the mapper.
+    public void unmapWrite(int address, int size) {
+        mapWrite(address, size, null, 0);
+    }
+}
@@ -15,14 +15,13 @@ You should have received a copy of the GNU General Public License along with
 this program.  If not, see <http://www.gnu.org/licenses/>.
  */
 
-import java.awt.*;
 import java.io.*;
 
 public class PaletteTable {
 
-    public static int[] curTable = new int[64];
-    public static int[] origTable = new int[64];
-    public static int[][] emphTable = new int[8][64];
+    public int[] curTable = new int[64];
+    public int[] origTable = new int[64];
+    public int[][] emphTable = new int[8][64];
     int currentEmph = -1;
     int currentHue, currentSaturation, currentLightness, currentContrast;
 
@@ -105,8 +104,7 @@ public class PaletteTable {
 
         } catch (Exception e) {
 
-            // Unable to load palette.
-            System.out.println("PaletteTable: Internal Palette Loaded.");
+            // Unable to load palette. The caller reports it:
             loadDefaultPalette();
             return false;
 
@@ -170,7 +168,7 @@ public class PaletteTable {
     public int RGBtoHSL(int r, int g, int b) {
 
         float[] hsbvals = new float[3];
-        hsbvals = Color.RGBtoHSB(b, g, r, hsbvals);
+        hsbvals = rgbToHsb(b, g, r, hsbvals);
         hsbvals[0] -= Math.floor(hsbvals[0]);
 
         int ret = 0;
@@ -189,7 +187,7 @@ public class PaletteTable {
     }
 
     public int HSLtoRGB(int h, int s, int l) {
-        return Color.HSBtoRGB(h / 255.0f, s / 255.0f, l / 255.0f);
+        return hsbToRgb(h / 255.0f, s / 255.0f, l / 255.0f);
     }
 
     public int HSLtoRGB(int hsl) {
@@ -198,7 +196,99 @@ public class PaletteTable {
         h = (float) (((hsl >> 16) & 0xFF) / 255d);
         s = (float) (((hsl >> 8) & 0xFF) / 255d);
         l = (float) (((hsl) & 0xFF) / 255d);
-        return Color.HSBtoRGB(h, s, l);
+        return hsbToRgb(h, s, l);
+
+    }
+
+    // Converts RGB components to hue, saturation and brightness.
+    // Same results as java.awt.Color.RGBtoHSB, but doesn't
+    // require AWT to be loaded (for headless use).
+    private static float[] rgbToHsb(int r, int g, int b, float[] hsbvals) {
+
+        int cmax = Math.max(r, Math.max(g, b));
+        int cmin = Math.min(r, Math.min(g, b));
+        float hue, saturation, brightness;
+
+        brightness = ((float) cmax) / 255.0f;
+        if (cmax != 0) {
+            saturation = ((float) (cmax - cmin)) / ((float) cmax);
+        } else {
+            saturation = 0;
+        }
+
+        if (saturation == 0) {
+            hue = 0;
+        } else {
+            float redc = ((float) (cmax - r)) / ((float) (cmax - cmin));
+            float greenc = ((float) (cmax - g)) / ((float) (cmax - cmin));
+            float bluec = ((float) (cmax - b)) / ((float) (cmax - cmin));
+            if (r == cmax) {
+                hue = bluec - greenc;
+            } else if (g == cmax) {
+                hue = 2.0f + redc - bluec;
+            } else {
+                hue = 4.0f + greenc - redc;
+            }
+            hue = hue / 6.0f;
+            if (hue < 0) {
+                hue = hue + 1.0f;
+            }
+        }
+
+        hsbvals[0] = hue;
+        hsbvals[1] = saturation;
+        hsbvals[2] = brightness;
+        return hsbvals;
+
+    }
+
+    // Converts hue, saturation and brightness to RGB.
+    // Same results as java.awt.Color.HSBtoRGB.
+    private static int hsbToRgb(float hue, float saturation, float brightness) {
+
+        int r = 0, g = 0, b = 0;
+        if (saturation == 0) {
+            r = g = b = (int) (brightness * 255.0f + 0.5f);
+        } else {
+            float h = (hue - (float) Math.floor(hue)) * 6.0f;
+            float f = h - (float) Math.floor(h);
+            float p = brightness * (1.0f - saturation);
+            float q = brightness * (1.0f - saturation * f);
+            float t = brightness * (1.0f - (saturation * (1.0f - f)));
+            switch ((int) h) {
+                case 0:
+                    r = (int) (brightness * 255.0f + 0.5f);
+                    g = (int) (t * 255.0f + 0.5f);
+                    b = (int) (p * 255.0f + 0.5f);
+                    break;
+                case 1:
+                    r = (int) (q * 255.0f + 0.5f);
+                    g = (int) (brightness * 255.0f + 0.5f);
+                    b = (int) (p * 255.0f + 0.5f);
+                    break;
+                case 2:
+                    r = (int) (p * 255.0f + 0.5f);
+                    g = (int) (brightness * 255.0f + 0.5f);
+                    b = (int) (t * 255.0f + 0.5f);
+                    break;
+                case 3:
+                    r = (int) (p * 255.0f + 0.5f);
+                    g = (int) (q * 255.0f + 0.5f);
+                    b = (int) (brightness * 255.0f + 0.5f);
+                    break;
+                case 4:
+                    r = (int) (t * 255.0f + 0.5f);
+                    g = (int) (p * 255.0f + 0.5f);
+                    b = (int) (brightness * 255.0f + 0.5f);
+                    break;
+                case 5:
+                    r = (int) (brightness * 255.0f + 0.5f);
+                    g = (int) (p * 255.0f + 0.5f);
+                    b = (int) (q * 255.0f + 0.5f);
+                    break;
+            }
+        }
+        return 0xff000000 | (r << 16) | (g << 8) | b;
 
     }
 
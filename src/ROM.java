@@ -33,9 +33,10 @@ public class ROM {
     boolean saveRamUpToDate = true;
     short[] header;
     short[][] rom;
+    int[][] romCode;
     short[][] vrom;
     short[] saveRam;
-    Tile[][] vromTile;
+    int[][] vromTile;
     NES nes;
     int romCount;
     int vromCount;
@@ -233,8 +234,9 @@ public class ROM {
         }
 
         rom = new short[romCount][16384];
+        romCode = new int[romCount][];
         vrom = new short[vromCount][4096];
-        vromTile = new Tile[vromCount][256];
+        vromTile = new int[vromCount][];
 
         //try{
 
@@ -261,40 +263,6 @@ public class ROM {
             offset += 4096;
         }
 
-        // Create VROM tiles:
-        for (int i = 0; i < vromCount; i++) {
-            for (int j = 0; j < 256; j++) {
-                vromTile[i][j] = new Tile();
-            }
-        }
-
-        // Convert CHR-ROM banks to tiles:
-        //System.out.println("Converting CHR-ROM image data..");
-        //System.out.println("VROM bank count: "+vromCount);
-        int tileIndex;
-        int leftOver;
-        for (int v = 0; v < vromCount; v++) {
-            for (int i = 0; i < 4096; i++) {
-                tileIndex = i >> 4;
-                leftOver = i % 16;
-                if (leftOver < 8) {
-                    vromTile[v][tileIndex].setScanline(leftOver, vrom[v][i], vrom[v][i + 8]);
-                } else {
-                    vromTile[v][tileIndex].setScanline(leftOver - 8, vrom[v][i - 8], vrom[v][i]);
-                }
-            }
-        }
-
-        /*
-        tileIndex = (address+i)>>4;
-        leftOver = (address+i) % 16;
-        if(leftOver<8){
-        ptTile[tileIndex].setScanline(leftOver,value[offset+i],ppuMem.load(address+8+i));
-        }else{
-        ptTile[tileIndex].setScanline(leftOver-8,ppuMem.load(address-8+i),value[offset+i]);
-        }
-         */
-
         /*}catch(Exception e){
         //System.out.println("Error reading ROM & VROM banks. Corrupt file?");
         valid = false;
@@ -326,11 +294,28 @@ public class ROM {
         return rom[bank];
     }
 
+    // Returns the decoded instructions of a ROM bank. These are
+    // filled in by the CPU as it runs the code (see CPU.decode).
+    // The array is only made once code is fetched from the bank
+    // (see PageTable.loadCode), so data banks don't get one.
+    public int[] getRomBankCode(int bank) {
+        if (romCode[bank] == null) {
+            romCode[bank] = new int[16384];
+        }
+        return romCode[bank];
+    }
+
     public short[] getVromBank(int bank) {
         return vrom[bank];
     }
 
-    public Tile[] getVromBankTiles(int bank) {
+    // Returns the decoded tiles of a VROM bank (see Tile).
+    // A bank is decoded the first time it is asked for.
+    public int[] getVromBankTiles(int bank) {
+        if (vromTile[bank] == null) {
+            vromTile[bank] = new int[256 * 8];
+            Tile.decode(vrom[bank], 0, vromTile[bank], 0, 256);
+        }
         return vromTile[bank];
     }
 
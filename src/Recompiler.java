@@ -0,0 +1,1129 @@
+/*
+vNES
+Copyright © 2006-2013 Open Emulation Project
+
+This program is free software: you can redistribute it and/or modify it under
+the terms of the GNU General Public License as published by the Free Software
+Foundation, either version 3 of the License, or (at your option) any later
+version.
+
+This program is distributed in the hope that it will be useful, but WITHOUT ANY
+WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS FOR A
+PARTICULAR PURPOSE.  See the GNU General Public License for more details.
+
+You should have received a copy of the GNU General Public License along with
+this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+import java.util.IdentityHashMap;
+
+// Translates code in PRG-ROM that runs often into JVM bytecode, one
+// class per block, so that the JIT compiles the game's own code.
+// Used by the flat interpreter when enabled (see CPU.setRecompiling).
+//
+// A block starts at an instruction that has run HOT times, and goes
+// on until the end of its page, a jump, or an instruction it can't
+// translate. Branches leave the block when taken. Blocks are kept
+// in a table for each ROM bank array, like the decoded instructions,
+// so switching banks switches blocks too. The blocks hold addresses,
+// so a bank has a table for each address it's mapped at, and keeps
+// them when it moves back and forth.
+//
+// Each instruction does exactly what the interpreter does. The CPU
+// only runs a block when no event can fall due before its last
+// instruction and no DMA or DMC stall is still to be counted, and
+// a block stops after any instruction that went to
+// I/O, which is done at the time the interpreter would do it. That
+// access may have raised an interrupt, moved an event or switched
+// banks, so the interpreter takes over until the next block.
+public final class Recompiler {
+
+    // Times an instruction is run before a block is compiled from it:
+    static final int HOT = 32;
+    // Most instructions in a block, and most blocks compiled:
+    static final int BLOCK_SIZE = 32;
+    static final int MAX_BLOCKS = 8192;
+
+    // Registers, copied in and out by the CPU around each block.
+    // The flags are kept as in the interpreter:
+    public int a, x, y, sp, pc;
+    public int carry, zero, interrupt, decimal, brk, notused, overflow, sign;
+    // Address (minus one, as pc) and opcode of the last instruction:
+    public int opaddr, opcode;
+    // Set by an I/O access:
+    public boolean exit;
+
+    public short[] mem;
+
+    private NES nes;
+    private CPU cpu;
+    private Scheduler sched;
+    private short[][] readPage;
+    private int[] readOffset;
+    private short[][] writePage;
+    private int[] writeOffset;
+    private int[] opdata;
+
+    // Blocks and run counts for each array of decoded instructions
+    // and address it's mapped at, and those last looked at:
+    private IdentityHashMap<int[], Table> tables = new IdentityHashMap<int[], Table>();
+    private int[] lastCode;
+    private int lastBase;
+    private CompiledBlock[] blocks;
+    private byte[] heat;
+
+    private Loader loader = new Loader();
+    private int blockCount;
+    // Set when a block class couldn't be defined; no more are tried:
+    private boolean failed;
+
+    public Recompiler(CPU cpu, NES nes) {
+
+        this.nes = nes;
+        this.cpu = cpu;
+        sched = nes.scheduler;
+        mem = nes.cpuMem.mem;
+        PageTable pages = nes.memMapper.getPageTable();
+        readPage = pages.readPage;
+        readOffset = pages.readOffset;
+        writePage = pages.writePage;
+        writeOffset = pages.writeOffset;
+        opdata = CpuInfo.getOpData();
+
+    }
+
+    // Returns the block for the instruction at the given address,
+    // whose decoded entry is at index in code. Counts the run, and
+    // compiles the block once it's hot. Returns null if there isn't
+    // one (yet).
+    CompiledBlock getBlock(int[] code, int index, int address) {
+
+        // Address of the start of the array as mapped:
+        int base = (address - index) & 0xFFFF;
+        if (code != lastCode || base != lastBase) {
+            Table first = tables.get(code);
+            Table t = first;
+            while (t != null && t.base != base) {
+                t = t.next;
+            }
+            if (t == null) {
+                t = new Table(code.length, base);
+                t.next = first;
+                tables.put(code, t);
+            }
+            lastCode = code;
+            lastBase = base;
+            blocks = t.blocks;
+            heat = t.heat;
+        }
+
+        CompiledBlock block = blocks[index];
+        if (block == null && heat[index] < HOT && ++heat[index] == HOT && blockCount < MAX_BLOCKS && !failed) {
+            block = compile(address);
+            blocks[index] = block;
+        }
+        return block;
+
+    }
+
+    // Memory access for the blocks. Reads and writes that aren't
+    // to an array go to I/O as in the interpreter, with the clock
+    // moved on by the cycles of the instructions run before.
+
+    public int load(int addr, int cycles) {
+
+        if (addr < 0x2000) {
+            return mem[addr & 0x7FF];
+        }
+        int page = addr >> 8;
+        short[] data = readPage[page];
+        if (data != null) {
+            return data[readOffset[page] + (addr & 0xFF)];
+        }
+        exit = true;
+        sched.clock += cycles;
+        int value = cpu.loadIO(addr);
+        sched.clock -= cycles;
+        return value;
+
+    }
+
+    public void write(int addr, int value, int cycles) {
+
+        if (addr < 0x2000) {
+            mem[addr & 0x7FF] = (short) value;
+            return;
+        }
+        int page = addr >> 8;
+        short[] data = writePage[page];
+        if (data != null) {
+            data[writeOffset[page] + (addr & 0xFF)] = (short) value;
+            return;
+        }
+        exit = true;
+        sched.clock += cycles;
+        cpu.write(addr, (short) value);
+        sched.clock -= cycles;
+
+    }
+
+    public int indirect(int addr) {
+        return cpu.indirect(addr);
+    }
+
+    public static int packStatus(int c, int z, int i, int d, int b, int u, int v, int n) {
+        return CPU.packStatus(c, z, i, d, b, u, v, n);
+    }
+
+    // Local variables of the compiled run() method:
+    private static final int R = 1;
+    private static final int MEM = 2;
+    private static final int A = 3;
+    private static final int X = 4;
+    private static final int Y = 5;
+    private static final int SP = 6;
+    private static final int C = 7;
+    private static final int Z = 8;
+    private static final int I = 9;
+    private static final int D = 10;
+    private static final int B = 11;
+    private static final int U = 12;
+    private static final int V = 13;
+    private static final int N = 14;
+    private static final int CYC = 15;     // page crossing cycles
+    private static final int ADDR = 16;
+    private static final int TEMP = 17;
+    private static final int ADD = 18;
+    private static final int VALUE = 19;
+    private static final int PC = 20;      // the rest are set on exit
+    private static final int OPADDR = 21;
+    private static final int OPCODE = 22;
+    private static final int CYCLES = 23;
+    private static final int LOCALS = 24;
+
+    private static final int PC_SET = Integer.MIN_VALUE;
+
+    // Register fields, by local variable:
+    private static final String[] FIELDS = {
+        null, null, null, "a", "x", "y", "sp", "carry", "zero",
+        "interrupt", "decimal", "brk", "notused", "overflow", "sign"
+    };
+
+    private static final String SELF = "Recompiler";
+    private static final String RUN_DESC = "(LRecompiler;)I";
+
+    // State while compiling a block:
+    private ClassBuilder.Code c;
+    private ClassBuilder.Label tail;
+    private boolean[] changed = new boolean[FIELDS.length];
+    private int cycles;         // cycles of the instructions before
+    private boolean pageCycles; // whether CYC may be nonzero
+    private boolean io;         // whether the instruction may go to I/O
+
+    // Compiles a block starting at the given address in ROM, or
+    // returns null if it would be too short to be worth it.
+    private CompiledBlock compile(int address) {
+
+        int page = address >> 8;
+        short[] data = readPage[page];
+        int base = readOffset[page] - (page << 8);
+
+        // Find the instructions:
+        int[] addrs = new int[BLOCK_SIZE];
+        int count = 0;
+        int maxCycles = 0;
+        int last = 0;
+        int addr = address;
+        while (count < BLOCK_SIZE && (addr >> 8) == page) {
+            int opcode = data[base + addr];
+            int opinf = opdata[opcode];
+            int size = (opinf >> 16) & 0xFF;
+            if (!isSupported(opinf) || (addr & 0xFF) + size > 0x100) {
+                break;
+            }
+            addrs[count++] = addr;
+            maxCycles += last;
+            last = maxCycles(opcode, opinf);
+            int inst = opinf & 0xFF;
+            if (inst == CpuInfo.INS_JMP || inst == CpuInfo.INS_JSR) {
+                break;
+            }
+            addr += size;
+        }
+        if (count < 2) {
+            return null;
+        }
+
+        ClassBuilder cb = new ClassBuilder("RecompiledBlock" + blockCount, "CompiledBlock");
+        c = cb.method("run", RUN_DESC, 16, LOCALS);
+        tail = new ClassBuilder.Label();
+        cycles = 0;
+        pageCycles = false;
+
+        // Load the registers:
+        c.load(ClassBuilder.ALOAD, R);
+        c.field(ClassBuilder.GETFIELD, SELF, "mem", "[S");
+        c.load(ClassBuilder.ASTORE, MEM);
+        for (int reg = A; reg <= N; reg++) {
+            c.load(ClassBuilder.ALOAD, R);
+            c.field(ClassBuilder.GETFIELD, SELF, FIELDS[reg], "I");
+            istore(reg);
+        }
+        c.iconst(0);
+        istore(CYC);
+        for (int i = 0; i < changed.length; i++) {
+            changed[i] = false;
+        }
+
+        boolean ended = false;
+        for (int i = 0; i < count; i++) {
+            int a = addrs[i];
+            ended = instruction(a - 1, data[base + a], operand(data, base, a));
+        }
+        if (!ended) {
+            int a = addrs[count - 1];
+            int opcode = data[base + a];
+            exit((a - 1) + ((opdata[opcode] >> 16) & 0xFF), a - 1, opcode, cycles);
+        }
+
+        // Store the registers that were changed, and return:
+        c.mark(tail);
+        for (int reg = A; reg <= N; reg++) {
+            if (changed[reg]) {
+                c.load(ClassBuilder.ALOAD, R);
+                iload(reg);
+                c.field(ClassBuilder.PUTFIELD, SELF, FIELDS[reg], "I");
+            }
+        }
+        c.load(ClassBuilder.ALOAD, R);
+        iload(PC);
+        c.field(ClassBuilder.PUTFIELD, SELF, "pc", "I");
+        c.load(ClassBuilder.ALOAD, R);
+        iload(OPADDR);
+        c.field(ClassBuilder.PUTFIELD, SELF, "opaddr", "I");
+        c.load(ClassBuilder.ALOAD, R);
+        iload(OPCODE);
+        c.field(ClassBuilder.PUTFIELD, SELF, "opcode", "I");
+        iload(CYCLES);
+        iload(CYC);
+        c.op(ClassBuilder.IADD);
+        c.op(ClassBuilder.IRETURN);
+        c = null;
+
+        CompiledBlock block;
+        try {
+            Class<?> cls = loader.define("RecompiledBlock" + blockCount, cb.toByteArray());
+            block = (CompiledBlock) cls.getDeclaredConstructor().newInstance();
+        } catch (Exception e) {
+            // The interpreter runs everything from here on:
+            failed = true;
+            nes.gui.showErrorMsg("Recompiler turned off: " + e);
+            return null;
+        }
+        blockCount++;
+        block.address = address;
+        block.maxCycles = maxCycles;
+        return block;
+
+    }
+
+    private boolean isSupported(int opinf) {
+
+        if (opinf == 0xFF) {
+            // Illegal opcode.
+            return false;
+        }
+        switch (opinf & 0xFF) {
+            case CpuInfo.INS_BRK:
+            case CpuInfo.INS_RTI:
+            case CpuInfo.INS_RTS:
+            case CpuInfo.INS_DUMMY:
+                // Left to the interpreter, which also handles
+                // returns from the outermost routine.
+                return false;
+        }
+        return true;
+
+    }
+
+    private int operand(short[] data, int base, int addr) {
+
+        int size = (opdata[data[base + addr]] >> 16) & 0xFF;
+        int operand = 0;
+        if (size > 1) {
+            operand = data[base + addr + 1];
+        }
+        if (size > 2) {
+            operand |= data[base + addr + 2] << 8;
+        }
+        return operand;
+
+    }
+
+    // Most cycles an instruction can take:
+    private int maxCycles(int opcode, int opinf) {
+
+        int n = opinf >> 24;
+        if (addsPageCycle(opcode, opinf)) {
+            n++;
+        }
+        if (((opinf >> 8) & 0xFF) == CpuInfo.ADDR_REL) {
+            n += 2;
+        }
+        return n;
+
+    }
+
+    // Whether the interpreter adds a cycle for a page crossing:
+    private static boolean addsPageCycle(int opcode, int opinf) {
+
+        switch (opinf & 0xFF) {
+            case CpuInfo.INS_STA:
+            case CpuInfo.INS_ASL:
+            case CpuInfo.INS_LSR:
+            case CpuInfo.INS_ROL:
+            case CpuInfo.INS_ROR:
+            case CpuInfo.INS_INC:
+            case CpuInfo.INS_DEC:
+                return false;
+        }
+        switch ((opinf >> 8) & 0xFF) {
+            case CpuInfo.ADDR_ABSX:
+            case CpuInfo.ADDR_ABSY:
+            case CpuInfo.ADDR_PREIDXIND:
+                return true;
+            case CpuInfo.ADDR_POSTIDXIND:
+                return opcode != 0x11 && opcode != 0x31 && opcode != 0xF1;
+        }
+        return false;
+
+    }
+
+    // Compiles one instruction. Returns true if it always leaves
+    // the block.
+    private boolean instruction(int opaddr, int opcode, int operand) {
+
+        int opinf = opdata[opcode];
+        int inst = opinf & 0xFF;
+        int mode = (opinf >> 8) & 0xFF;
+        int size = (opinf >> 16) & 0xFF;
+        int next = opaddr + size;
+        io = false;
+
+        switch (inst) {
+            case CpuInfo.INS_ADC:
+            case CpuInfo.INS_SBC: {
+                read(opcode, opinf, operand);
+                istore(ADD);
+                if (inst == CpuInfo.INS_SBC) {
+                    // Same as ADC with the operand inverted.
+                    iload(ADD);
+                    c.iconst(0xFF);
+                    c.op(ClassBuilder.IXOR);
+                    istore(ADD);
+                }
+                iload(A);
+                iload(ADD);
+                c.op(ClassBuilder.IADD);
+                iload(C);
+                c.op(ClassBuilder.IADD);
+                istore(TEMP);
+                // V = ((A^temp)&(add^temp)&0x80)>>7:
+                iload(A);
+                iload(TEMP);
+                c.op(ClassBuilder.IXOR);
+                iload(ADD);
+                iload(TEMP);
+                c.op(ClassBuilder.IXOR);
+                c.op(ClassBuilder.IAND);
+                c.iconst(0x80);
+                c.op(ClassBuilder.IAND);
+                c.iconst(7);
+                c.op(ClassBuilder.ISHR);
+                istore(V);
+                iload(TEMP);
+                c.iconst(8);
+                c.op(ClassBuilder.ISHR);
+                istore(C);
+                iload(TEMP);
+                c.iconst(0xFF);
+                c.op(ClassBuilder.IAND);
+                istore(A);
+                setSignZero(A);
+                break;
+            }
+            case CpuInfo.INS_AND:
+            case CpuInfo.INS_ORA:
+            case CpuInfo.INS_EOR: {
+                read(opcode, opinf, operand);
+                iload(A);
+                if (inst == CpuInfo.INS_AND) {
+                    c.op(ClassBuilder.IAND);
+                } else {
+                    c.op(inst == CpuInfo.INS_ORA ? ClassBuilder.IOR : ClassBuilder.IXOR);
+                    c.iconst(0xFF);
+                    c.op(ClassBuilder.IAND);
+                }
+                istore(A);
+                setSignZero(A);
+                break;
+            }
+            case CpuInfo.INS_BIT: {
+                read(opcode, opinf, operand);
+                istore(TEMP);
+                bit(TEMP, 7, N);
+                bit(TEMP, 6, V);
+                iload(TEMP);
+                iload(A);
+                c.op(ClassBuilder.IAND);
+                istore(Z);
+                break;
+            }
+            case CpuInfo.INS_CMP:
+            case CpuInfo.INS_CPX:
+            case CpuInfo.INS_CPY: {
+                read(opcode, opinf, operand);
+                istore(VALUE);
+                iload(inst == CpuInfo.INS_CMP ? A : inst == CpuInfo.INS_CPX ? X : Y);
+                iload(VALUE);
+                c.op(ClassBuilder.ISUB);
+                istore(TEMP);
+                // C = ~temp>>>31:
+                iload(TEMP);
+                c.iconst(-1);
+                c.op(ClassBuilder.IXOR);
+                c.iconst(31);
+                c.op(ClassBuilder.IUSHR);
+                istore(C);
+                bit(TEMP, 7, N);
+                iload(TEMP);
+                c.iconst(0xFF);
+                c.op(ClassBuilder.IAND);
+                istore(Z);
+                break;
+            }
+            case CpuInfo.INS_LDA:
+            case CpuInfo.INS_LDX:
+            case CpuInfo.INS_LDY: {
+                int reg = inst == CpuInfo.INS_LDA ? A : inst == CpuInfo.INS_LDX ? X : Y;
+                read(opcode, opinf, operand);
+                istore(reg);
+                setSignZero(reg);
+                break;
+            }
+            case CpuInfo.INS_STA:
+            case CpuInfo.INS_STX:
+            case CpuInfo.INS_STY: {
+                writeOperand(mode, operand, inst == CpuInfo.INS_STA ? A : inst == CpuInfo.INS_STX ? X : Y);
+                break;
+            }
+            case CpuInfo.INS_ASL:
+            case CpuInfo.INS_LSR:
+            case CpuInfo.INS_ROL:
+            case CpuInfo.INS_ROR:
+            case CpuInfo.INS_INC:
+            case CpuInfo.INS_DEC: {
+                if (mode == CpuInfo.ADDR_ACC) {
+                    shift(inst, A);
+                } else if (mode == CpuInfo.ADDR_ZP || mode == CpuInfo.ADDR_ZPX
+                        || (mode == CpuInfo.ADDR_ABS && operand < 0x2000)) {
+                    // Read-modify-write in RAM:
+                    rmwAddress(mode, operand & 0x7FF);
+                    c.load(ClassBuilder.ALOAD, MEM);
+                    iload(ADDR);
+                    c.op(ClassBuilder.SALOAD);
+                    istore(TEMP);
+                    shift(inst, TEMP);
+                    c.load(ClassBuilder.ALOAD, MEM);
+                    iload(ADDR);
+                    iload(TEMP);
+                    c.op(ClassBuilder.SASTORE);
+                } else {
+                    rmwAddress(mode, operand);
+                    load(ADDR);
+                    istore(TEMP);
+                    shift(inst, TEMP);
+                    store(ADDR, TEMP);
+                }
+                break;
+            }
+            case CpuInfo.INS_INX:
+            case CpuInfo.INS_INY:
+            case CpuInfo.INS_DEX:
+            case CpuInfo.INS_DEY: {
+                int reg = inst == CpuInfo.INS_INX || inst == CpuInfo.INS_DEX ? X : Y;
+                iload(reg);
+                c.iconst(inst == CpuInfo.INS_INX || inst == CpuInfo.INS_INY ? 1 : -1);
+                c.op(ClassBuilder.IADD);
+                c.iconst(0xFF);
+                c.op(ClassBuilder.IAND);
+                istore(reg);
+                setSignZero(reg);
+                break;
+            }
+            case CpuInfo.INS_TAX:
+            case CpuInfo.INS_TAY:
+            case CpuInfo.INS_TXA:
+            case CpuInfo.INS_TYA: {
+                int from = inst == CpuInfo.INS_TXA ? X : inst == CpuInfo.INS_TYA ? Y : A;
+                iload(from);
+                istore(inst == CpuInfo.INS_TAX ? X : inst == CpuInfo.INS_TAY ? Y : A);
+                setSignZero(from);
+                break;
+            }
+            case CpuInfo.INS_TSX: {
+                iload(SP);
+                c.iconst(0x100);
+                c.op(ClassBuilder.ISUB);
+                istore(X);
+                bit(SP, 7, N);
+                iload(X);
+                istore(Z);
+                break;
+            }
+            case CpuInfo.INS_TXS: {
+                iload(X);
+                c.iconst(0x100);
+                c.op(ClassBuilder.IADD);
+                c.iconst(0xFF);
+                c.op(ClassBuilder.IAND);
+                c.iconst(0x100);
+                c.op(ClassBuilder.IOR);
+                istore(SP);
+                break;
+            }
+            case CpuInfo.INS_CLC: setFlag(C, 0); break;
+            case CpuInfo.INS_SEC: setFlag(C, 1); break;
+            case CpuInfo.INS_CLI: setFlag(I, 0); break;
+            case CpuInfo.INS_SEI: setFlag(I, 1); break;
+            case CpuInfo.INS_CLV: setFlag(V, 0); break;
+            case CpuInfo.INS_CLD: setFlag(D, 0); break;
+            case CpuInfo.INS_SED: setFlag(D, 1); break;
+            case CpuInfo.INS_NOP: break;
+            case CpuInfo.INS_PHA: {
+                iload(A);
+                push();
+                break;
+            }
+            case CpuInfo.INS_PHP: {
+                setFlag(B, 1);
+                for (int reg = C; reg <= N; reg++) {
+                    iload(reg);
+                }
+                c.invoke(ClassBuilder.INVOKESTATIC, SELF, "packStatus", "(IIIIIIII)I");
+                push();
+                break;
+            }
+            case CpuInfo.INS_PLA: {
+                pull();
+                istore(A);
+                setSignZero(A);
+                break;
+            }
+            case CpuInfo.INS_PLP: {
+                pull();
+                istore(TEMP);
+                bit(TEMP, 0, C);
+                // Z = ((temp>>1)&1)==0?1:0:
+                iload(TEMP);
+                c.iconst(1);
+                c.op(ClassBuilder.ISHR);
+                c.iconst(1);
+                c.op(ClassBuilder.IAND);
+                c.iconst(1);
+                c.op(ClassBuilder.IXOR);
+                istore(Z);
+                bit(TEMP, 2, I);
+                bit(TEMP, 3, D);
+                bit(TEMP, 4, B);
+                bit(TEMP, 6, V);
+                bit(TEMP, 7, N);
+                setFlag(U, 1);
+                break;
+            }
+            case CpuInfo.INS_JMP: {
+                if (mode == CpuInfo.ADDR_INDABS) {
+                    c.load(ClassBuilder.ALOAD, R);
+                    c.iconst(operand);
+                    c.invoke(ClassBuilder.INVOKEVIRTUAL, SELF, "indirect", "(I)I");
+                    c.iconst(1);
+                    c.op(ClassBuilder.ISUB);
+                    istore(PC);
+                    exit(PC_SET, opaddr, opcode, cycles + (opinf >> 24));
+                } else {
+                    exit(operand - 1, opaddr, opcode, cycles + (opinf >> 24));
+                }
+                return true;
+            }
+            case CpuInfo.INS_JSR: {
+                c.iconst((next >> 8) & 0xFF);
+                push();
+                c.iconst(next & 0xFF);
+                push();
+                exit(operand - 1, opaddr, opcode, cycles + (opinf >> 24));
+                return true;
+            }
+            case CpuInfo.INS_BCC: branch(opcode, opaddr, next, operand, C, 0); break;
+            case CpuInfo.INS_BCS: branch(opcode, opaddr, next, operand, C, 1); break;
+            case CpuInfo.INS_BVC: branch(opcode, opaddr, next, operand, V, 0); break;
+            case CpuInfo.INS_BVS: branch(opcode, opaddr, next, operand, V, 1); break;
+            case CpuInfo.INS_BPL: branch(opcode, opaddr, next, operand, N, 0); break;
+            case CpuInfo.INS_BMI: branch(opcode, opaddr, next, operand, N, 1); break;
+            case CpuInfo.INS_BNE: branch(opcode, opaddr, next, operand, Z, -1); break;
+            case CpuInfo.INS_BEQ: branch(opcode, opaddr, next, operand, Z, 0); break;
+        }
+
+        cycles += opinf >> 24;
+        if (io) {
+            // Leave after an I/O access:
+            ClassBuilder.Label stay = new ClassBuilder.Label();
+            c.load(ClassBuilder.ALOAD, R);
+            c.field(ClassBuilder.GETFIELD, SELF, "exit", "Z");
+            c.jump(ClassBuilder.IFEQ, stay);
+            exit(next, opaddr, opcode, cycles);
+            c.mark(stay);
+        }
+        return false;
+
+    }
+
+    // Leaves the block with the given registers. A pc of PC_SET
+    // means that it has been put in PC already.
+    private void exit(int pc, int opaddr, int opcode, int cycles) {
+
+        if (pc != PC_SET) {
+            c.iconst(pc);
+            istore(PC);
+        }
+        c.iconst(opaddr);
+        istore(OPADDR);
+        c.iconst(opcode);
+        istore(OPCODE);
+        c.iconst(cycles);
+        istore(CYCLES);
+        c.jump(ClassBuilder.GOTO, tail);
+
+    }
+
+    // Leaves the block at the branch target if the flag is set to
+    // value (or is nonzero, for a value of -1).
+    private void branch(int opcode, int opaddr, int next, int offset, int flag, int value) {
+
+        int target = (offset < 0x80 ? next + offset : next + offset - 256) & 0xFFFF;
+        // BMI only adds one cycle, the others one more on a
+        // page crossing:
+        int taken = opcode == 0x30 ? 1 : ((opaddr & 0xFF00) != (target & 0xFF00) ? 2 : 1);
+
+        ClassBuilder.Label stay = new ClassBuilder.Label();
+        iload(flag);
+        if (value == -1) {
+            c.jump(ClassBuilder.IFEQ, stay);
+        } else if (value == 0) {
+            c.jump(ClassBuilder.IFNE, stay);
+        } else {
+            c.iconst(value);
+            c.jump(ClassBuilder.IF_ICMPNE, stay);
+        }
+        exit(target, opaddr, opcode, cycles + (opdata[opcode] >> 24) + taken);
+        c.mark(stay);
+
+    }
+
+    // Pushes the value of an instruction's operand.
+    private void read(int opcode, int opinf, int operand) {
+
+        int mode = (opinf >> 8) & 0xFF;
+        switch (mode) {
+            case CpuInfo.ADDR_IMM: {
+                c.iconst(operand);
+                return;
+            }
+            case CpuInfo.ADDR_ZP:
+            case CpuInfo.ADDR_ZPX:
+            case CpuInfo.ADDR_ZPY: {
+                c.load(ClassBuilder.ALOAD, MEM);
+                zeroPage(mode, operand);
+                c.op(ClassBuilder.SALOAD);
+                return;
+            }
+            case CpuInfo.ADDR_ABS: {
+                if (operand < 0x2000) {
+                    c.load(ClassBuilder.ALOAD, MEM);
+                    c.iconst(operand & 0x7FF);
+                    c.op(ClassBuilder.SALOAD);
+                } else {
+                    c.iconst(operand);
+                    istore(ADDR);
+                    load(ADDR);
+                }
+                return;
+            }
+        }
+
+        // Indexed, leaving the page crossing in TEMP:
+        address(mode, operand);
+        load(ADDR);
+        if (addsPageCycle(opcode, opinf)) {
+            iload(CYC);
+            iload(TEMP);
+            c.op(ClassBuilder.IADD);
+            istore(CYC);
+            pageCycles = true;
+        }
+
+    }
+
+    // Writes a register to an instruction's address.
+    private void writeOperand(int mode, int operand, int reg) {
+
+        switch (mode) {
+            case CpuInfo.ADDR_ZP:
+            case CpuInfo.ADDR_ZPX:
+            case CpuInfo.ADDR_ZPY: {
+                c.load(ClassBuilder.ALOAD, MEM);
+                zeroPage(mode, operand);
+                iload(reg);
+                c.op(ClassBuilder.SASTORE);
+                return;
+            }
+            case CpuInfo.ADDR_ABS: {
+                if (operand < 0x2000) {
+                    c.load(ClassBuilder.ALOAD, MEM);
+                    c.iconst(operand & 0x7FF);
+                    iload(reg);
+                    c.op(ClassBuilder.SASTORE);
+                    return;
+                }
+                c.iconst(operand);
+                istore(ADDR);
+                break;
+            }
+            default: {
+                address(mode, operand);
+            }
+        }
+        store(ADDR, reg);
+
+    }
+
+    // Pushes a zero page address.
+    private void zeroPage(int mode, int operand) {
+
+        c.iconst(operand);
+        if (mode != CpuInfo.ADDR_ZP) {
+            iload(mode == CpuInfo.ADDR_ZPX ? X : Y);
+            c.op(ClassBuilder.IADD);
+            c.iconst(0xFF);
+            c.op(ClassBuilder.IAND);
+        }
+
+    }
+
+    // Puts an indexed address in ADDR, and its page crossing cycle
+    // in TEMP.
+    private void address(int mode, int operand) {
+
+        switch (mode) {
+            case CpuInfo.ADDR_ABSX:
+            case CpuInfo.ADDR_ABSY: {
+                int reg = mode == CpuInfo.ADDR_ABSX ? X : Y;
+                c.iconst(operand);
+                iload(reg);
+                c.op(ClassBuilder.IADD);
+                c.iconst(0xFFFF);
+                c.op(ClassBuilder.IAND);
+                istore(ADDR);
+                c.iconst(operand & 0xFF);
+                iload(reg);
+                c.op(ClassBuilder.IADD);
+                c.iconst(8);
+                c.op(ClassBuilder.ISHR);
+                istore(TEMP);
+                break;
+            }
+            case CpuInfo.ADDR_PREIDXIND: {
+                // The pointer is read from zero page at operand+X:
+                c.iconst(operand);
+                iload(X);
+                c.op(ClassBuilder.IADD);
+                istore(TEMP);
+                c.load(ClassBuilder.ALOAD, MEM);
+                iload(TEMP);
+                c.iconst(0xFF);
+                c.op(ClassBuilder.IAND);
+                c.op(ClassBuilder.SALOAD);
+                c.load(ClassBuilder.ALOAD, MEM);
+                iload(TEMP);
+                c.iconst(0xFF);
+                c.op(ClassBuilder.IAND);
+                c.iconst(1);
+                c.op(ClassBuilder.IADD);
+                c.iconst(0x7FF);
+                c.op(ClassBuilder.IAND);
+                c.op(ClassBuilder.SALOAD);
+                c.iconst(8);
+                c.op(ClassBuilder.ISHL);
+                c.op(ClassBuilder.IOR);
+                istore(ADDR);
+                iload(TEMP);
+                c.iconst(8);
+                c.op(ClassBuilder.ISHR);
+                istore(TEMP);
+                break;
+            }
+            case CpuInfo.ADDR_POSTIDXIND: {
+                // The pointer is read from zero page at operand,
+                // and then Y is added:
+                c.load(ClassBuilder.ALOAD, MEM);
+                c.iconst(operand);
+                c.op(ClassBuilder.SALOAD);
+                c.load(ClassBuilder.ALOAD, MEM);
+                c.iconst((operand + 1) & 0x7FF);
+                c.op(ClassBuilder.SALOAD);
+                c.iconst(8);
+                c.op(ClassBuilder.ISHL);
+                c.op(ClassBuilder.IOR);
+                istore(TEMP);
+                iload(TEMP);
+                iload(Y);
+                c.op(ClassBuilder.IADD);
+                c.iconst(0xFFFF);
+                c.op(ClassBuilder.IAND);
+                istore(ADDR);
+                iload(TEMP);
+                c.iconst(0xFF);
+                c.op(ClassBuilder.IAND);
+                iload(Y);
+                c.op(ClassBuilder.IADD);
+                c.iconst(8);
+                c.op(ClassBuilder.ISHR);
+                istore(TEMP);
+                break;
+            }
+        }
+
+    }
+
+    // Puts the address of a read-modify-write instruction in ADDR.
+    private void rmwAddress(int mode, int operand) {
+
+        c.iconst(operand);
+        if (mode == CpuInfo.ADDR_ZPX || mode == CpuInfo.ADDR_ABSX) {
+            iload(X);
+            c.op(ClassBuilder.IADD);
+            c.iconst(mode == CpuInfo.ADDR_ZPX ? 0xFF : 0xFFFF);
+            c.op(ClassBuilder.IAND);
+        }
+        istore(ADDR);
+
+    }
+
+    // Pushes the value at the address in the given local.
+    private void load(int addr) {
+
+        c.load(ClassBuilder.ALOAD, R);
+        iload(addr);
+        pushCycles();
+        c.invoke(ClassBuilder.INVOKEVIRTUAL, SELF, "load", "(II)I");
+        io = true;
+
+    }
+
+    // Writes a local to the address in another.
+    private void store(int addr, int value) {
+
+        c.load(ClassBuilder.ALOAD, R);
+        iload(addr);
+        iload(value);
+        pushCycles();
+        c.invoke(ClassBuilder.INVOKEVIRTUAL, SELF, "write", "(III)V");
+        io = true;
+
+    }
+
+    // Pushes the cycles run in the block so far.
+    private void pushCycles() {
+
+        c.iconst(cycles);
+        if (pageCycles) {
+            iload(CYC);
+            c.op(ClassBuilder.IADD);
+        }
+
+    }
+
+    // The stack is in RAM at 0x100-0x1FF, so it's accessed directly.
+
+    private void push() {
+
+        istore(VALUE);
+        c.load(ClassBuilder.ALOAD, MEM);
+        iload(SP);
+        iload(VALUE);
+        c.op(ClassBuilder.SASTORE);
+        iload(SP);
+        c.iconst(1);
+        c.op(ClassBuilder.ISUB);
+        c.iconst(0xFF);
+        c.op(ClassBuilder.IAND);
+        c.iconst(0x100);
+        c.op(ClassBuilder.IOR);
+        istore(SP);
+
+    }
+
+    private void pull() {
+
+        iload(SP);
+        c.iconst(1);
+        c.op(ClassBuilder.IADD);
+        c.iconst(0xFF);
+        c.op(ClassBuilder.IAND);
+        c.iconst(0x100);
+        c.op(ClassBuilder.IOR);
+        istore(SP);
+        c.load(ClassBuilder.ALOAD, MEM);
+        iload(SP);
+        c.op(ClassBuilder.SALOAD);
+
+    }
+
+    // ASL, LSR, ROL, ROR, INC or DEC of a local, setting the flags.
+    private void shift(int inst, int reg) {
+
+        switch (inst) {
+            case CpuInfo.INS_ASL: {
+                bit(reg, 7, C);
+                iload(reg);
+                c.iconst(1);
+                c.op(ClassBuilder.ISHL);
+                c.iconst(0xFF);
+                c.op(ClassBuilder.IAND);
+                istore(reg);
+                break;
+            }
+            case CpuInfo.INS_LSR: {
+                bit(reg, 0, C);
+                iload(reg);
+                c.iconst(1);
+                c.op(ClassBuilder.ISHR);
+                istore(reg);
+                break;
+            }
+            case CpuInfo.INS_ROL: {
+                iload(C);
+                istore(ADD);
+                bit(reg, 7, C);
+                iload(reg);
+                c.iconst(1);
+                c.op(ClassBuilder.ISHL);
+                c.iconst(0xFF);
+                c.op(ClassBuilder.IAND);
+                iload(ADD);
+                c.op(ClassBuilder.IADD);
+                istore(reg);
+                break;
+            }
+            case CpuInfo.INS_ROR: {
+                iload(C);
+                c.iconst(7);
+                c.op(ClassBuilder.ISHL);
+                istore(ADD);
+                bit(reg, 0, C);
+                iload(reg);
+                c.iconst(1);
+                c.op(ClassBuilder.ISHR);
+                iload(ADD);
+                c.op(ClassBuilder.IADD);
+                istore(reg);
+                break;
+            }
+            default: {
+                iload(reg);
+                c.iconst(inst == CpuInfo.INS_INC ? 1 : -1);
+                c.op(ClassBuilder.IADD);
+                c.iconst(0xFF);
+                c.op(ClassBuilder.IAND);
+                istore(reg);
+            }
+        }
+        if (inst == CpuInfo.INS_LSR) {
+            setFlag(N, 0);
+            iload(reg);
+            istore(Z);
+        } else {
+            setSignZero(reg);
+        }
+
+    }
+
+    // Sets N and Z from a register.
+    private void setSignZero(int reg) {
+
+        bit(reg, 7, N);
+        iload(reg);
+        istore(Z);
+
+    }
+
+    // Sets a flag to bit n of a local.
+    private void bit(int from, int n, int flag) {
+
+        iload(from);
+        if (n > 0) {
+            c.iconst(n);
+            c.op(ClassBuilder.ISHR);
+        }
+        c.iconst(1);
+        c.op(ClassBuilder.IAND);
+        istore(flag);
+
+    }
+
+    private void setFlag(int flag, int value) {
+
+        c.iconst(value);
+        istore(flag);
+
+    }
+
+    private void iload(int local) {
+        c.load(ClassBuilder.ILOAD, local);
+    }
+
+    private void istore(int local) {
+        c.load(ClassBuilder.ISTORE, local);
+        if (local < changed.length) {
+            changed[local] = true;
+        }
+    }
+
+    // Blocks and run counts for a ROM bank array mapped at base,
+    // and the table for the next address it was mapped at.
+    static class Table {
+
+        int base;
+        CompiledBlock[] blocks;
+        byte[] heat;
+        Table next;
+
+        Table(int size, int base) {
+            this.base = base;
+            blocks = new CompiledBlock[size];
+            heat = new byte[size];
+        }
+    }
+
+    // Loads the compiled classes. Each Recompiler has its own, so
+    // the classes can be unloaded with it.
+    static class Loader extends ClassLoader {
+
+        Loader() {
+            super(Recompiler.class.getClassLoader());
+        }
+
+        Class<?> define(String name, byte[] b) {
+            return defineClass(name, b, 0, b.length);
+        }
+    }
+}
@@ -15,16 +15,18 @@ You should have received a copy of the GNU General Public License along with
 this program.  If not, see <http://www.gnu.org/licenses/>.
  */
 
+// Software scalers for the screen buffer. The normal and scanline
+// scalers are stateless; raster scaling uses the filter parameters
+// of the Scale instance it's called on.
 public class Scale {
 
-    private static int brightenShift;
-    private static int brightenShiftMask;
-    private static int brightenCutoffMask;
-    private static int darkenShift;
-    private static int darkenShiftMask;
-    private static int si,  di,  di2,  val,  x,  y;
+    private int brightenShift;
+    private int brightenShiftMask;
+    private int brightenCutoffMask;
+    private int darkenShift;
+    private int darkenShiftMask;
 
-    public static void setFilterParams(int darkenDepth, int brightenDepth) {
+    public void setFilterParams(int darkenDepth, int brightenDepth) {
 
         switch (darkenDepth) {
             case 0: {
@@ -132,7 +134,7 @@ public class Scale {
 
     }
 
-    public static final void doRasterScaling(int[] src, int[] dest, boolean[] changed) {
+    public final void doRasterScaling(int[] src, int[] dest, boolean[] changed) {
 
         int di = 0;
         int di2 = 512;
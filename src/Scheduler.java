@@ -0,0 +1,91 @@
+/*
+vNES
+Copyright © 2006-2013 Open Emulation Project
+
+This program is free software: you can redistribute it and/or modify it under
+the terms of the GNU General Public License as published by the Free Software
+Foundation, either version 3 of the License, or (at your option) any later
+version.
+
+This program is distributed in the hope that it will be useful, but WITHOUT ANY
+WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS FOR A
+PARTICULAR PURPOSE.  See the GNU General Public License for more details.
+
+You should have received a copy of the GNU General Public License along with
+this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+// Master clock and event timeline. The clock counts CPU cycles.
+// Each unit that needs the CPU to stop at a given time sets a
+// deadline in its own slot; the CPU runs instructions without
+// checking on anything else until the clock reaches the earliest
+// one, and then lets the units whose deadlines are due run.
+public class Scheduler {
+
+    // Slots:
+    public static final int PPU = 0;    // next PPU event
+    public static final int APU = 1;    // next APU event that may raise an IRQ
+    public static final int MAPPER = 2; // mapper timer (cycle based IRQs)
+    public static final int STEP = 3;   // end of a runCycles() budget
+    public static final int SLOT_COUNT = 4;
+
+    public static final long NEVER = Long.MAX_VALUE;
+
+    // Current time:
+    public long clock;
+    // Earliest deadline:
+    public long next = NEVER;
+
+    long[] deadline = new long[SLOT_COUNT];
+
+    public Scheduler() {
+        reset();
+    }
+
+    // Sets the deadline for a slot.
+    public void schedule(int slot, long time) {
+
+        deadline[slot] = time;
+        if (time < next) {
+            next = time;
+        } else {
+            findNext();
+        }
+
+    }
+
+    // Clears the deadline for a slot.
+    public void cancel(int slot) {
+        schedule(slot, NEVER);
+    }
+
+    // Returns true if the slot's deadline has been reached.
+    public boolean isDue(int slot) {
+        return deadline[slot] <= clock;
+    }
+
+    public long getDeadline(int slot) {
+        return deadline[slot];
+    }
+
+    public void reset() {
+
+        clock = 0;
+        for (int i = 0; i < SLOT_COUNT; i++) {
+            deadline[i] = NEVER;
+        }
+        next = NEVER;
+
+    }
+
+    private void findNext() {
+
+        next = NEVER;
+        for (int i = 0; i < SLOT_COUNT; i++) {
+            if (deadline[i] < next) {
+                next = deadline[i];
+            }
+        }
+
+    }
+}
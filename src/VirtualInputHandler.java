@@ -0,0 +1,54 @@
+/*
+vNES
+Copyright © 2006-2013 Open Emulation Project
+
+This program is free software: you can redistribute it and/or modify it under
+the terms of the GNU General Public License as published by the Free Software
+Foundation, either version 3 of the License, or (at your option) any later
+version.
+
+This program is distributed in the hope that it will be useful, but WITHOUT ANY
+WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS FOR A
+PARTICULAR PURPOSE.  See the GNU General Public License for more details.
+
+You should have received a copy of the GNU General Public License along with
+this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+// Joypad input that is set from code instead of the keyboard,
+// e.g. when running headless or playing back recorded input.
+public class VirtualInputHandler implements InputHandler {
+
+    boolean[] keyState;
+
+    public VirtualInputHandler() {
+        keyState = new boolean[InputHandler.NUM_KEYS];
+    }
+
+    public short getKeyState(int padKey) {
+        return (short) (keyState[padKey] ? 0x41 : 0x40);
+    }
+
+    public void setKeyState(int padKey, boolean pressed) {
+        keyState[padKey] = pressed;
+    }
+
+    // Sets all keys at once. Bit n is InputHandler key n.
+    public void setKeyStates(int mask) {
+        for (int i = 0; i < InputHandler.NUM_KEYS; i++) {
+            keyState[i] = ((mask >> i) & 1) != 0;
+        }
+    }
+
+    public void mapKey(int padKey, int deviceKey) {
+        // No device keys to map.
+    }
+
+    public void reset() {
+        keyState = new boolean[InputHandler.NUM_KEYS];
+    }
+
+    public void update() {
+        // doesn't do anything.
+    }
+}
@@ -0,0 +1,145 @@
+/*
+vNES
+Copyright © 2006-2013 Open Emulation Project
+
+This program is free software: you can redistribute it and/or modify it under
+the terms of the GNU General Public License as published by the Free Software
+Foundation, either version 3 of the License, or (at your option) any later
+version.
+
+This program is distributed in the hope that it will be useful, but WITHOUT ANY
+WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS FOR A
+PARTICULAR PURPOSE.  See the GNU General Public License for more details.
+
+You should have received a copy of the GNU General Public License along with
+this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+// The IRQ counter of the Konami VRC4 mappers. An 8-bit
+// counter counts up, either once per CPU cycle or once per scanline
+// through a prescaler that takes 3 off 341 each cycle. When it's
+// clocked at 0xFF it reloads from the latch and raises an IRQ.
+// Instead of being clocked, the counter sets a deadline in the
+// Scheduler.MAPPER slot for when it next runs out, and works out
+// its value from the cycles run when it's written to.
+public class VrcIrq {
+
+    NES nes;
+    Scheduler sched;
+
+    int latch;
+    int counter;
+    int prescaler;
+    boolean enabled;
+    boolean enableAfterAck;
+    boolean cycleMode;
+    // Time that counter and prescaler are up to date with:
+    long time;
+
+    public VrcIrq(NES nes) {
+        this.nes = nes;
+        this.sched = nes.getScheduler();
+    }
+
+    public void setLatchLow(int value) {
+        latch = (latch & 0xF0) | (value & 0x0F);
+    }
+
+    public void setLatchHigh(int value) {
+        latch = (latch & 0x0F) | ((value & 0x0F) << 4);
+    }
+
+    // Control register: bit 0 enables the counter again after an
+    // acknowledge, bit 1 enables it, and bit 2 selects cycle mode.
+    public void writeControl(int value) {
+
+        update();
+        enableAfterAck = (value & 0x01) != 0;
+        enabled = (value & 0x02) != 0;
+        cycleMode = (value & 0x04) != 0;
+        if (enabled) {
+            counter = latch;
+            prescaler = 341;
+        }
+        schedule();
+
+    }
+
+    public void acknowledge() {
+
+        update();
+        enabled = enableAfterAck;
+        schedule();
+
+    }
+
+    // Called when the deadline is reached.
+    public void timerEvent() {
+
+        update();
+        schedule();
+
+    }
+
+    public void reset() {
+
+        latch = 0;
+        counter = 0;
+        prescaler = 341;
+        enabled = false;
+        enableAfterAck = false;
+        cycleMode = false;
+        time = sched.clock;
+        sched.cancel(Scheduler.MAPPER);
+
+    }
+
+    // Clocks the counter for the cycles run since the last update,
+    // raising an IRQ each time it runs out.
+    private void update() {
+
+        int cycles = (int) (sched.clock - time);
+        time = sched.clock;
+        if (!enabled || cycles <= 0) {
+            return;
+        }
+
+        int clocks;
+        if (cycleMode) {
+            clocks = cycles;
+        } else {
+            int dots = cycles * 3;
+            if (dots < prescaler) {
+                prescaler -= dots;
+                return;
+            }
+            clocks = (dots - prescaler) / 341 + 1;
+            prescaler = prescaler - dots + clocks * 341;
+        }
+
+        while (clocks >= 0x100 - counter) {
+            clocks -= 0x100 - counter;
+            counter = latch;
+            nes.getCpu().requestIrq(CPU.IRQ_NORMAL);
+        }
+        counter += clocks;
+
+    }
+
+    // Sets the deadline for when the counter next runs out.
+    private void schedule() {
+
+        if (!enabled) {
+            sched.cancel(Scheduler.MAPPER);
+            return;
+        }
+
+        int clocks = 0x100 - counter;
+        if (cycleMode) {
+            sched.schedule(Scheduler.MAPPER, time + clocks);
+        } else {
+            sched.schedule(Scheduler.MAPPER, time + (prescaler + 341 * (clocks - 1) + 2) / 3);
+        }
+
+    }
+}
\ No newline at end of file
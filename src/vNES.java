@@ -25,6 +25,7 @@ public class vNES extends Applet implements Runnable {
     boolean sound;
     boolean fps;
     boolean stereo;
+    boolean bandlimited;
     boolean timeemulation;
     boolean showsoundbuffer;
     int samplerate;
@@ -47,10 +48,11 @@ public class vNES extends Applet implements Runnable {
         gui.init(false);
 
         Globals.appletMode = true;
-        Globals.memoryFlushValue = 0x00; // make SMB1 hacked version work.
 
         nes = gui.getNES();
+        nes.setMemoryFlushValue((short) 0x00); // make SMB1 hacked version work.
         nes.enableSound(sound);
+        nes.setBandLimitedSound(bandlimited);
         nes.reset();
 
     }
@@ -113,7 +115,7 @@ public class vNES extends Applet implements Runnable {
             addScreenView();
 
             // Set some properties:
-            Globals.timeEmulation = timeemulation;
+            nes.setTimeEmulation(timeemulation);
             nes.ppu.showSoundBuffer = showsoundbuffer;
 
             // Start emulation:
@@ -251,6 +253,13 @@ public class vNES extends Applet implements Runnable {
             stereo = tmp.equals("on");
         }
 
+        tmp = getParameter("bandlimited");
+        if (tmp == null || tmp.equals("")) {
+            bandlimited = false;
+        } else {
+            bandlimited = tmp.equals("on");
+        }
+
         tmp = getParameter("scanlines");
         if (tmp == null || tmp.equals("")) {
             scanlines = false;
@@ -0,0 +1,68 @@
+/*
+vNES
+Copyright © 2006-2013 Open Emulation Project
+
+This program is free software: you can redistribute it and/or modify it under
+the terms of the GNU General Public License as published by the Free Software
+Foundation, either version 3 of the License, or (at your option) any later
+version.
+
+This program is distributed in the hope that it will be useful, but WITHOUT ANY
+WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS FOR A
+PARTICULAR PURPOSE.  See the GNU General Public License for more details.
+
+You should have received a copy of the GNU General Public License along with
+this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+// Command line entry point that runs a ROM without any display or
+// sound, as fast as possible, and reports the emulation speed.
+//
+// Usage: java vNESHeadless <rom file> [frames]
+public class vNESHeadless {
+
+    public static void main(String[] args) {
+
+        if (args.length < 1) {
+            System.out.println("Usage: java vNESHeadless <rom file> [frames]");
+            return;
+        }
+
+        int frames = 600;
+        if (args.length > 1) {
+            try {
+                frames = Integer.parseInt(args[1]);
+            } catch (NumberFormatException e) {
+                System.out.println("Invalid frame count: " + args[1]);
+                return;
+            }
+        }
+
+        HeadlessUI gui = new HeadlessUI();
+        NES nes = gui.getNES();
+
+        if (!nes.loadRom(args[0])) {
+            System.out.println("vNES was unable to load (" + args[0] + ").");
+            return;
+        }
+
+        HiResTimer timer = gui.getTimer();
+
+        long t1 = timer.currentMicros();
+        for (int i = 0; i < frames; i++) {
+            if (!nes.runFrame()) {
+                break;
+            }
+        }
+        long t2 = timer.currentMicros();
+
+        double seconds = (t2 - t1) / 1000000.0;
+        System.out.println("Frames:     " + gui.getFrameCount());
+        System.out.println("Time:       " + seconds + " s");
+        System.out.println("Frames/sec: " + (gui.getFrameCount() / seconds));
+
+        nes.destroy();
+        gui.destroy();
+
+    }
+}